@@ -0,0 +1,351 @@
+package net.i2p.router.client;
+
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import android.os.Build;
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+import net.i2p.I2PAppContext;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the server-side thread count and round-trip latency of the
+ * DomainClientEventLoop against a reader and writer thread per connection,
+ * as used by ClientConnectionRunner, with 1, 10 and 50 simulated clients.
+ * The event loop is measured both echoing on the poll thread and handing
+ * each frame to a per-connection SerialExecutor, as
+ * DomainClientConnectionRunner does.
+ * <p/>
+ * Results are written to logcat with the tag "I2CPBenchmark".
+ */
+public class DomainClientEventLoopBenchmark extends TestCase {
+    private static final String TAG = "I2CPBenchmark";
+    private static final int ROUND_TRIPS = 200;
+    private static final int BODY_SIZE = 64;
+    private static final int MESSAGE_TYPE = 20;
+
+    public void testOneClient() throws Exception {
+        compare(1);
+    }
+
+    public void testTenClients() throws Exception {
+        compare(10);
+    }
+
+    public void testFiftyClients() throws Exception {
+        compare(50);
+    }
+
+    private void compare(int clients) throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP)
+            return;
+        Result blocking = run(new ThreadPerConnectionServer(), clients);
+        Result loop = run(new EventLoopServer(false), clients);
+        Result dispatched = run(new EventLoopServer(true), clients);
+        Log.i(TAG, clients + " clients, thread per connection: " + blocking);
+        Log.i(TAG, clients + " clients, event loop:            " + loop);
+        Log.i(TAG, clients + " clients, event loop, dispatched: " + dispatched);
+        assertEquals(2 * clients, blocking.serverThreads);
+        assertTrue(loop.serverThreads <= 1 + DomainClientEventLoop.WRITER_THREADS);
+        assertTrue(dispatched.serverThreads <= 1 + DomainClientEventLoop.WRITER_THREADS +
+                DomainClientEventLoop.DISPATCHER_THREADS);
+    }
+
+    /**
+     * A handler blocked on one connection must not hold up the others.
+     */
+    public void testBlockedHandlerDoesNotStallOthers() throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP)
+            return;
+        String name = "net.i2p.android.benchmark." + System.nanoTime();
+        LocalServerSocket listener = new LocalServerSocket(name);
+        DomainClientEventLoop loop = new DomainClientEventLoop(I2PAppContext.getGlobalContext(), "Benchmark");
+        loop.start();
+        final CountDownLatch release = new CountDownLatch(1);
+        List<LocalSocket> sockets = new ArrayList<>();
+        try {
+            LocalSocket[] clients = new LocalSocket[2];
+            for (int i = 0; i < 2; i++) {
+                clients[i] = new LocalSocket();
+                clients[i].connect(new LocalSocketAddress(name));
+                LocalSocket accepted = listener.accept();
+                sockets.add(clients[i]);
+                sockets.add(accepted);
+                EchoHandler handler = new EchoHandler(loop.newSerialExecutor(),
+                        i == 0 ? release : null);
+                handler.conn = loop.register(accepted.getFileDescriptor(),
+                        accepted.getInputStream(), accepted.getOutputStream(), handler);
+            }
+
+            sendFrame(clients[0]);
+            sendFrame(clients[1]);
+            clients[1].setSoTimeout(5000);
+            new DataInputStream(clients[1].getInputStream())
+                    .readFully(new byte[DomainClientEventLoop.HEADER_SIZE + BODY_SIZE]);
+        } finally {
+            release.countDown();
+            loop.stop();
+            for (LocalSocket s : sockets) {
+                try { s.close(); } catch (IOException ioe) {}
+            }
+            listener.close();
+        }
+    }
+
+    private static void sendFrame(LocalSocket socket) throws IOException {
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeInt(BODY_SIZE);
+        out.writeByte(MESSAGE_TYPE);
+        out.write(new byte[BODY_SIZE]);
+        out.flush();
+    }
+
+    private Result run(EchoServer server, int clients) throws Exception {
+        String name = "net.i2p.android.benchmark." + System.nanoTime();
+        LocalServerSocket listener = new LocalServerSocket(name);
+        List<LocalSocket> sockets = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        try {
+            for (int i = 0; i < clients; i++) {
+                LocalSocket client = new LocalSocket();
+                client.connect(new LocalSocketAddress(name));
+                sockets.add(client);
+                LocalSocket accepted = listener.accept();
+                sockets.add(accepted);
+                server.serve(accepted);
+            }
+
+            List<Future<long[]>> results = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < clients; i++) {
+                results.add(pool.submit(new Client(sockets.get(2 * i))));
+            }
+            long[] latencies = new long[clients * ROUND_TRIPS];
+            int idx = 0;
+            for (Future<long[]> f : results) {
+                long[] l = f.get();
+                System.arraycopy(l, 0, latencies, idx, l.length);
+                idx += l.length;
+            }
+            long elapsed = System.nanoTime() - start;
+
+            Arrays.sort(latencies);
+            Result rv = new Result();
+            rv.serverThreads = server.getThreadCount();
+            rv.p50 = latencies[latencies.length / 2];
+            rv.p99 = latencies[(int) (latencies.length * 0.99)];
+            rv.messagesPerSecond = latencies.length * 1000000000L / Math.max(1, elapsed);
+            return rv;
+        } finally {
+            pool.shutdownNow();
+            server.stop();
+            for (LocalSocket s : sockets) {
+                try { s.close(); } catch (IOException ioe) {}
+            }
+            listener.close();
+        }
+    }
+
+    private static class Result {
+        int serverThreads;
+        long p50;
+        long p99;
+        long messagesPerSecond;
+
+        @Override
+        public String toString() {
+            return "threads=" + serverThreads +
+                    " p50=" + (p50 / 1000) + "us" +
+                    " p99=" + (p99 / 1000) + "us" +
+                    " msgs/s=" + messagesPerSecond;
+        }
+    }
+
+    /**
+     * Sends a frame and waits for the echo, ROUND_TRIPS times.
+     */
+    private static class Client implements Callable<long[]> {
+        private final LocalSocket mSocket;
+
+        Client(LocalSocket socket) {
+            mSocket = socket;
+        }
+
+        public long[] call() throws Exception {
+            DataOutputStream out = new DataOutputStream(mSocket.getOutputStream());
+            DataInputStream in = new DataInputStream(mSocket.getInputStream());
+            byte[] body = new byte[BODY_SIZE];
+            byte[] echo = new byte[DomainClientEventLoop.HEADER_SIZE + BODY_SIZE];
+            long[] rv = new long[ROUND_TRIPS];
+            for (int i = 0; i < ROUND_TRIPS; i++) {
+                long begin = System.nanoTime();
+                out.writeInt(BODY_SIZE);
+                out.writeByte(MESSAGE_TYPE);
+                out.write(body);
+                out.flush();
+                in.readFully(echo);
+                rv[i] = System.nanoTime() - begin;
+            }
+            return rv;
+        }
+    }
+
+    private interface EchoServer {
+        void serve(LocalSocket socket) throws IOException;
+        int getThreadCount();
+        void stop();
+    }
+
+    /**
+     * The model used by ClientConnectionRunner.
+     */
+    private static class ThreadPerConnectionServer implements EchoServer {
+        private final List<Thread> mThreads = new ArrayList<>();
+
+        public void serve(LocalSocket socket) throws IOException {
+            final InputStream in = socket.getInputStream();
+            final OutputStream out = socket.getOutputStream();
+            final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+            Thread reader = new Thread(new Runnable() {
+                public void run() {
+                    DataInputStream din = new DataInputStream(in);
+                    try {
+                        while (true) {
+                            int len = din.readInt();
+                            byte[] frame = new byte[DomainClientEventLoop.HEADER_SIZE + len];
+                            frame[3] = (byte) len;
+                            frame[2] = (byte) (len >> 8);
+                            frame[1] = (byte) (len >> 16);
+                            frame[0] = (byte) (len >> 24);
+                            din.readFully(frame, 4, frame.length - 4);
+                            queue.put(frame);
+                        }
+                    } catch (IOException ioe) {
+                    } catch (InterruptedException ie) {
+                    }
+                }
+            });
+            Thread writer = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        while (true) {
+                            byte[] frame = queue.take();
+                            out.write(frame);
+                            out.flush();
+                        }
+                    } catch (IOException ioe) {
+                    } catch (InterruptedException ie) {
+                    }
+                }
+            });
+            reader.setDaemon(true);
+            writer.setDaemon(true);
+            reader.start();
+            writer.start();
+            mThreads.add(reader);
+            mThreads.add(writer);
+        }
+
+        public int getThreadCount() {
+            return mThreads.size();
+        }
+
+        public void stop() {
+            for (Thread t : mThreads) {
+                t.interrupt();
+            }
+        }
+    }
+
+    private static class EventLoopServer implements EchoServer {
+        private final DomainClientEventLoop mLoop;
+        private final boolean mDispatch;
+
+        /**
+         * @param dispatch echo from a SerialExecutor instead of the poll thread
+         */
+        EventLoopServer(boolean dispatch) throws IOException {
+            mLoop = new DomainClientEventLoop(I2PAppContext.getGlobalContext(), "Benchmark");
+            mLoop.start();
+            mDispatch = dispatch;
+        }
+
+        public void serve(LocalSocket socket) throws IOException {
+            EchoHandler handler = new EchoHandler(mDispatch ? mLoop.newSerialExecutor() : null, null);
+            handler.conn = mLoop.register(socket.getFileDescriptor(),
+                    socket.getInputStream(), socket.getOutputStream(), handler);
+        }
+
+        public int getThreadCount() {
+            return mLoop.getThreadCount();
+        }
+
+        public void stop() {
+            mLoop.stop();
+        }
+    }
+
+    private static class EchoHandler implements DomainClientEventLoop.Handler {
+        private final Executor mDispatcher;
+        private final CountDownLatch mBlock;
+        volatile DomainClientEventLoop.Connection conn;
+
+        /**
+         * @param dispatcher null to echo on the poll thread
+         * @param block if non-null, wait for it before echoing
+         */
+        EchoHandler(Executor dispatcher, CountDownLatch block) {
+            mDispatcher = dispatcher;
+            mBlock = block;
+        }
+
+        public void frameReceived(byte[] frame, int offset, int length) {
+            final byte[] copy = Arrays.copyOfRange(frame, offset, offset + length);
+            if (mDispatcher == null) {
+                echo(copy);
+                return;
+            }
+            mDispatcher.execute(new Runnable() {
+                public void run() {
+                    if (mBlock != null) {
+                        try {
+                            mBlock.await(30, TimeUnit.SECONDS);
+                        } catch (InterruptedException ie) {}
+                    }
+                    echo(copy);
+                }
+            });
+        }
+
+        private void echo(byte[] frame) {
+            try {
+                conn.send(frame);
+            } catch (IOException ioe) {
+                Log.w(TAG, "Echo failed", ioe);
+            }
+        }
+
+        public void disconnected(IOException cause) {
+        }
+    }
+}
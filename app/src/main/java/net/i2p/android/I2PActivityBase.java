@@ -11,7 +11,9 @@ import android.support.v7.app.AppCompatActivity;
 import net.i2p.android.router.service.RouterBinder;
 import net.i2p.android.router.service.RouterService;
 import net.i2p.android.router.util.Util;
+import net.i2p.android.util.AppScheduler;
 import net.i2p.android.util.LocaleManager;
+import net.i2p.android.util.MemoryGovernor;
 
 public abstract class I2PActivityBase extends AppCompatActivity {
     /**
@@ -40,6 +42,7 @@ public abstract class I2PActivityBase extends AppCompatActivity {
         Util.d(this + " onCreate called");
         localeManager.onCreate(this);
         super.onCreate(savedInstanceState);
+        MemoryGovernor.getInstance().attach(this);
         _sharedPrefs = getSharedPreferences(SHARED_PREFS, 0);
     }
 
@@ -53,6 +56,7 @@ public abstract class I2PActivityBase extends AppCompatActivity {
     public void onStart() {
         Util.d(this + " onStart called");
         super.onStart();
+        AppScheduler.getInstance().onActivityStarted();
         if (_sharedPrefs.getBoolean(PREF_AUTO_START, DEFAULT_AUTO_START))
             startRouter();
         else
@@ -118,6 +122,7 @@ public abstract class I2PActivityBase extends AppCompatActivity {
     public void onStop() {
         Util.d(this + " onStop called");
         unbindRouter();
+        AppScheduler.getInstance().onActivityStopped();
         super.onStop();
     }
 
@@ -6,16 +6,26 @@ import android.os.Build;
 
 import net.i2p.android.router.R;
 import net.i2p.android.router.util.Util;
+import net.i2p.data.Base64;
 import net.i2p.data.DataHelper;
 import net.i2p.util.FileUtil;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -31,6 +41,16 @@ class InitActivities {
     private static final String PROP_NEW_INSTALL = "i2p.newInstall";
     private static final String PROP_NEW_VERSION = "i2p.newVersion";
     private static final String PROP_INSTALLED_VERSION = "i2p.version";
+    /**
+     *  Hash and length of each resource as last copied, keyed by destination file,
+     *  so unchanged resources are not rewritten on upgrade.
+     */
+    private static final String MANIFEST_FILE = "provision.config";
+    private static final int COPY_BUFFER_SIZE = 16*1024;
+    private static final int PROVISION_THREADS = 4;
+
+    /** file relative to base dir -> "hash,length" */
+    private final Map<String, String> _manifest = new ConcurrentHashMap<String, String>();
 
     public InitActivities(Context c) {
         ctx = c;
@@ -73,75 +93,77 @@ class InitActivities {
             // Deactivated phones in airplane mode definitely won't have correct time.
             if (Build.VERSION.SDK_INT < 11)  // Honeycomb 3.0
                 props.setProperty("time.disabled", "false");
-            mergeResourceToFile(R.raw.router_config, "router.config", props);
-            mergeResourceToFile(R.raw.logger_config, "logger.config", lProps.get(1));
+            // Create the tree first, the copies below run in parallel
+            new File(myDir, "addressbook").mkdir();
+            File docsDir = new File(myDir, "docs");
+            File cssDir = new File(docsDir, "themes/console/light");
+            cssDir.mkdirs();
+            new File(docsDir, "themes/console/images").mkdir();
+            new File(cssDir, "images").mkdir();
+            new File(myDir, "certificates").mkdir();
+
+            loadManifest();
+            List<Runnable> tasks = new ArrayList<Runnable>();
+            tasks.add(mergeTask(R.raw.router_config, "router.config", props));
+            tasks.add(mergeTask(R.raw.logger_config, "logger.config", lProps.get(1)));
             // This is not needed for now, i2ptunnel.config only contains tunnel
             // settings, which can now be configured manually. We don't want to
             // overwrite the user's tunnels.
-            //mergeResourceToFile(R.raw.i2ptunnel_config, "i2ptunnel.config", null);
-            copyResourceToFileIfAbsent(R.raw.i2ptunnel_config, "i2ptunnel.config");
-            // FIXME this is a memory hog to merge this way
-            mergeResourceToFile(R.raw.hosts_txt, "hosts.txt", null);
-            mergeResourceToFile(R.raw.more_hosts_txt, "hosts.txt", null);
-            copyResourceToFile(R.raw.blocklist_txt, "blocklist.txt");
-
-            File abDir = new File(myDir, "addressbook");
-            abDir.mkdir();
-            copyResourceToFile(R.raw.subscriptions_txt, "addressbook/subscriptions.txt");
-            mergeResourceToFile(R.raw.addressbook_config_txt, "addressbook/config.txt", null);
+            //tasks.add(mergeTask(R.raw.i2ptunnel_config, "i2ptunnel.config", null));
+            tasks.add(copyIfAbsentTask(R.raw.i2ptunnel_config, "i2ptunnel.config"));
+            // Both hosts resources in one load/store of hosts.txt
+            tasks.add(new Runnable() {
+                public void run() {
+                    Util.mergeResourcesToFile(ctx, myDir, "hosts.txt",
+                            new int[] {R.raw.hosts_txt, R.raw.more_hosts_txt}, null, null);
+                }
+            });
+            tasks.add(copyTask(R.raw.blocklist_txt, "blocklist.txt"));
 
-            File docsDir = new File(myDir, "docs");
-            docsDir.mkdir();
-            copyResourceToFile(R.raw.ahelper_conflict_header_ht, "docs/ahelper-conflict-header.ht");
-            copyResourceToFile(R.raw.ahelper_new_header_ht, "docs/ahelper-new-header.ht");
-            copyResourceToFile(R.raw.ahelper_notfound_header_ht, "docs/ahelper-notfound-header.ht");
-            copyResourceToFile(R.raw.auth_header_ht, "docs/auth-header.ht");
-            copyResourceToFile(R.raw.baduri_header_ht, "docs/baduri-header.ht");
-            copyResourceToFile(R.raw.denied_header_ht, "docs/denied-header.ht");
-            copyResourceToFile(R.raw.dnf_header_ht, "docs/dnf-header.ht");
-            copyResourceToFile(R.raw.dnfb_header_ht, "docs/dnfb-header.ht");
-            copyResourceToFile(R.raw.dnfh_header_ht, "docs/dnfh-header.ht");
-            copyResourceToFile(R.raw.dnfp_header_ht, "docs/dnfp-header.ht");
-            copyResourceToFile(R.raw.enc_header_ht, "docs/enc-header.ht");
-            copyResourceToFile(R.raw.encp_header_ht, "docs/encp-header.ht");
-            copyResourceToFile(R.raw.localhost_header_ht, "docs/localhost-header.ht");
-            copyResourceToFile(R.raw.nols_header_ht, "docs/nols-header.ht");
-            copyResourceToFile(R.raw.nolsp_header_ht, "docs/nolsp-header.ht");
-            copyResourceToFile(R.raw.noproxy_header_ht, "docs/noproxy-header.ht");
-            copyResourceToFile(R.raw.protocol_header_ht, "docs/protocol-header.ht");
-            copyResourceToFile(R.raw.reset_header_ht, "docs/reset-header.ht");
-            copyResourceToFile(R.raw.resetp_header_ht, "docs/resetp-header.ht");
+            tasks.add(copyTask(R.raw.subscriptions_txt, "addressbook/subscriptions.txt"));
+            tasks.add(mergeTask(R.raw.addressbook_config_txt, "addressbook/config.txt", null));
 
-            File cssDir = new File(docsDir, "themes/console/light");
-            cssDir.mkdirs();
-            //copyResourceToFile(R.raw.console_css, "docs/themes/console/light/console.css");
-            //copyResourceToFile(R.raw.android_css, "docs/themes/console/light/android.css");
-
-            File imgDir = new File(docsDir, "themes/console/images");
-            imgDir.mkdir();
-            copyResourceToFile(R.drawable.i2plogo, "docs/themes/console/images/i2plogo.png");
-            copyResourceToFile(R.drawable.itoopie_sm, "docs/themes/console/images/itoopie_sm.png");
-            //copyResourceToFile(R.drawable.outbound, "docs/themes/console/images/outbound.png");
-            //copyResourceToFile(R.drawable.inbound, "docs/themes/console/images/inbound.png");
-
-            File img2Dir = new File(cssDir, "images");
-            img2Dir.mkdir();
-            //copyResourceToFile(R.drawable.header, "docs/themes/console/light/images/header.png");
-
-            File certDir = new File(myDir, "certificates");
-            certDir.mkdir();
-            File certificates = new File(myDir, "certificates");
-            File[] allcertificates = certificates.listFiles();
-            if ( allcertificates != null) {
-                for (File f : allcertificates) {
-                    Util.d("Deleting old certificate file/dir " + f);
-                    FileUtil.rmdir(f, false);
+            tasks.add(copyTask(R.raw.ahelper_conflict_header_ht, "docs/ahelper-conflict-header.ht"));
+            tasks.add(copyTask(R.raw.ahelper_new_header_ht, "docs/ahelper-new-header.ht"));
+            tasks.add(copyTask(R.raw.ahelper_notfound_header_ht, "docs/ahelper-notfound-header.ht"));
+            tasks.add(copyTask(R.raw.auth_header_ht, "docs/auth-header.ht"));
+            tasks.add(copyTask(R.raw.baduri_header_ht, "docs/baduri-header.ht"));
+            tasks.add(copyTask(R.raw.denied_header_ht, "docs/denied-header.ht"));
+            tasks.add(copyTask(R.raw.dnf_header_ht, "docs/dnf-header.ht"));
+            tasks.add(copyTask(R.raw.dnfb_header_ht, "docs/dnfb-header.ht"));
+            tasks.add(copyTask(R.raw.dnfh_header_ht, "docs/dnfh-header.ht"));
+            tasks.add(copyTask(R.raw.dnfp_header_ht, "docs/dnfp-header.ht"));
+            tasks.add(copyTask(R.raw.enc_header_ht, "docs/enc-header.ht"));
+            tasks.add(copyTask(R.raw.encp_header_ht, "docs/encp-header.ht"));
+            tasks.add(copyTask(R.raw.localhost_header_ht, "docs/localhost-header.ht"));
+            tasks.add(copyTask(R.raw.nols_header_ht, "docs/nols-header.ht"));
+            tasks.add(copyTask(R.raw.nolsp_header_ht, "docs/nolsp-header.ht"));
+            tasks.add(copyTask(R.raw.noproxy_header_ht, "docs/noproxy-header.ht"));
+            tasks.add(copyTask(R.raw.protocol_header_ht, "docs/protocol-header.ht"));
+            tasks.add(copyTask(R.raw.reset_header_ht, "docs/reset-header.ht"));
+            tasks.add(copyTask(R.raw.resetp_header_ht, "docs/resetp-header.ht"));
+
+            //tasks.add(copyTask(R.raw.console_css, "docs/themes/console/light/console.css"));
+            //tasks.add(copyTask(R.raw.android_css, "docs/themes/console/light/android.css"));
+
+            tasks.add(copyTask(R.drawable.i2plogo, "docs/themes/console/images/i2plogo.png"));
+            tasks.add(copyTask(R.drawable.itoopie_sm, "docs/themes/console/images/itoopie_sm.png"));
+            //tasks.add(copyTask(R.drawable.outbound, "docs/themes/console/images/outbound.png"));
+            //tasks.add(copyTask(R.drawable.inbound, "docs/themes/console/images/inbound.png"));
+
+            //tasks.add(copyTask(R.drawable.header, "docs/themes/console/light/images/header.png"));
+
+            tasks.add(new Runnable() {
+                public void run() {
+                    unzipResourceToDir(R.raw.certificates_zip, "certificates");
                 }
-            }
-            unzipResourceToDir(R.raw.certificates_zip, "certificates");
+            });
             //File netDBDir = new File(myDir, "netDB");
             //netDBDir.mkdir();
             //unzipResourceToDir(R.raw.netdb_zip, "netDB");
+
+            runAll(tasks);
+            storeManifest();
         }
 
         // Set up the locations so settings can find them
@@ -150,6 +172,64 @@ class InitActivities {
         System.setProperty("wrapper.logfile", myDir + "/wrapper.log");
     }
 
+    private Runnable mergeTask(final int resID, final String f, final Properties overrides) {
+        return new Runnable() {
+            public void run() {
+                mergeResourceToFile(resID, f, overrides);
+            }
+        };
+    }
+
+    private Runnable copyTask(final int resID, final String f) {
+        return new Runnable() {
+            public void run() {
+                copyResourceToFile(resID, f);
+            }
+        };
+    }
+
+    private Runnable copyIfAbsentTask(final int resID, final String f) {
+        return new Runnable() {
+            public void run() {
+                copyResourceToFileIfAbsent(resID, f);
+            }
+        };
+    }
+
+    /**
+     *  Run the tasks on a small pool and wait for all of them.
+     *  Each task writes a different file.
+     */
+    private void runAll(List<Runnable> tasks) {
+        ExecutorService exec = Executors.newFixedThreadPool(PROVISION_THREADS, new ThreadFactory() {
+            private int count;
+
+            public synchronized Thread newThread(Runnable r) {
+                return new Thread(r, "Provisioner " + (++count));
+            }
+        });
+        long start = System.currentTimeMillis();
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(tasks.size());
+            for (Runnable task : tasks) {
+                futures.add(exec.submit(task));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ee) {
+                    Util.e("Provisioning task failed", ee.getCause());
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exec.shutdown();
+        }
+        Util.d("Provisioned " + tasks.size() + " resources in " +
+                (System.currentTimeMillis() - start) + " ms");
+    }
+
     /**
      *  @param f relative to base dir
      */
@@ -160,70 +240,106 @@ class InitActivities {
     }
 
     /**
+     *  Skipped if the resource is unchanged since it was last copied,
+     *  and the file is still there with the same length.
+     *
      *  @param f relative to base dir
      */
     private void copyResourceToFile(int resID, String f) {
+        File file = new File(myDir, f);
+        String hash = hashResource(resID);
+        if (hash != null && hash.equals(_manifest.get(f)) && hash.endsWith("," + file.length())) {
+            Util.d("Resource for " + f + " unchanged, skipping");
+            return;
+        }
+
         InputStream in = null;
         FileOutputStream out = null;
 
         Util.d("Creating file " + f + " from resource");
-        byte buf[] = new byte[4096];
+        byte buf[] = new byte[COPY_BUFFER_SIZE];
         try {
             // Context methods
             in = ctx.getResources().openRawResource(resID);
-            out = new FileOutputStream(new File(myDir, f));
+            out = new FileOutputStream(file);
 
             int read;
             while ( (read = in.read(buf)) != -1)
                 out.write(buf, 0, read);
-
+            out.close();
+            out = null;
+            if (hash != null)
+                _manifest.put(f, hash);
         } catch (IOException ioe) {
+            _manifest.remove(f);
         } catch (Resources.NotFoundException nfe) {
         } finally {
             if (in != null) try { in.close(); } catch (IOException ioe) {}
             if (out != null) try { out.close(); } catch (IOException ioe) {}
         }
     }
+
     /**
+     *  Entries are streamed straight to disk.
+     *  The old contents of the folder are replaced, unless the resource
+     *  is unchanged since it was last unzipped.
+     *
      *  @param folder relative to base dir
      */
     private void unzipResourceToDir(int resID, String folder) {
+        File dir = new File(myDir, folder);
+        String hash = hashResource(resID);
+        String[] existing = dir.list();
+        if (hash != null && hash.equals(_manifest.get(folder)) &&
+                existing != null && existing.length > 0) {
+            Util.d("Resource for '" + dir + "/' unchanged, skipping");
+            return;
+        }
+
+        File[] old = dir.listFiles();
+        if (old != null) {
+            for (File f : old) {
+                Util.d("Deleting old file/dir " + f);
+                FileUtil.rmdir(f, false);
+            }
+        }
+
         InputStream in = null;
         FileOutputStream out = null;
         ZipInputStream zis = null;
 
-        Util.d("Creating files in '" + myDir + "/" + folder + "/' from resource");
+        Util.d("Creating files in '" + dir + "/' from resource");
         try {
             // Context methods
             in = ctx.getResources().openRawResource(resID);
             zis = new ZipInputStream((in));
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
             ZipEntry ze;
             while ((ze = zis.getNextEntry()) != null) {
                 out = null;
                 try {
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    byte[] buffer = new byte[1024];
-                    int count;
-                    while ((count = zis.read(buffer)) != -1) {
-                        baos.write(buffer, 0, count);
-                    }
                     String name = ze.getName();
-                    File f = new File(myDir + "/" + folder +"/" + name);
+                    File f = new File(dir, name);
                     if (ze.isDirectory()) {
-                        Util.d("Creating directory " + myDir + "/" + folder +"/" + name + " from resource");
+                        Util.d("Creating directory " + f + " from resource");
                         f.mkdir();
                     } else {
-                        Util.d("Creating file " + myDir + "/" + folder +"/" + name + " from resource");
-                        byte[] bytes = baos.toByteArray();
+                        Util.d("Creating file " + f + " from resource");
                         out = new FileOutputStream(f);
-                        out.write(bytes);
+                        int count;
+                        while ((count = zis.read(buffer)) != -1) {
+                            out.write(buffer, 0, count);
+                        }
                     }
                 } catch (IOException ioe) {
                 } finally {
                     if (out != null) { try { out.close(); } catch (IOException ioe) {} out = null; }
                 }
             }
+            if (hash != null)
+                _manifest.put(folder, hash);
         } catch (IOException ioe) {
+            _manifest.remove(folder);
         } catch (Resources.NotFoundException nfe) {
         } finally {
             if (in != null) try { in.close(); } catch (IOException ioe) {}
@@ -232,6 +348,60 @@ class InitActivities {
         }
     }
 
+    /**
+     *  Reads the resource without writing anything.
+     *
+     *  @return "SHA-256 in base64,length" or null on error
+     */
+    private String hashResource(int resID) {
+        InputStream in = null;
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            in = ctx.getResources().openRawResource(resID);
+            byte[] buf = new byte[COPY_BUFFER_SIZE];
+            long length = 0;
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                md.update(buf, 0, read);
+                length += read;
+            }
+            return Base64.encode(md.digest()) + "," + length;
+        } catch (IOException ioe) {
+        } catch (NoSuchAlgorithmException nsae) {
+        } catch (Resources.NotFoundException nfe) {
+        } finally {
+            if (in != null) try { in.close(); } catch (IOException ioe) {}
+        }
+        return null;
+    }
+
+    private void loadManifest() {
+        _manifest.clear();
+        Properties props = new Properties();
+        InputStream fin = null;
+        try {
+            fin = ctx.openFileInput(MANIFEST_FILE);
+            DataHelper.loadProps(props, fin);
+        } catch (IOException ioe) {
+            return;
+        } finally {
+            if (fin != null) try { fin.close(); } catch (IOException ioe) {}
+        }
+        for (String key : props.stringPropertyNames()) {
+            _manifest.put(key, props.getProperty(key));
+        }
+    }
+
+    private void storeManifest() {
+        Properties props = new Properties();
+        props.putAll(_manifest);
+        try {
+            DataHelper.storeProps(props, ctx.getFileStreamPath(MANIFEST_FILE));
+        } catch (IOException ioe) {
+            Util.d("Failed to write " + MANIFEST_FILE);
+        }
+    }
+
     /**
      *  Load defaults from resource,
      *  then add props from settings,
@@ -5,6 +5,7 @@ import android.content.Context;
 import net.i2p.android.router.NewsActivity;
 import net.i2p.android.router.R;
 import net.i2p.android.router.util.Notifications;
+import net.i2p.android.util.AppScheduler;
 import net.i2p.app.ClientApp;
 import net.i2p.app.ClientAppManager;
 import net.i2p.app.ClientAppState;
@@ -17,7 +18,6 @@ import net.i2p.router.news.NewsMetadata;
 import net.i2p.router.news.NewsXMLParser;
 import net.i2p.util.EepGet;
 import net.i2p.util.FileUtil;
-import net.i2p.util.I2PAppThread;
 import net.i2p.util.Log;
 import net.i2p.util.ReusableGZIPInputStream;
 import net.i2p.util.SecureFileOutputStream;
@@ -52,8 +52,7 @@ public class NewsFetcher implements Runnable, EepGet.StatusListener, ClientApp {
     private boolean _invalidated;
     private File _newsFile;
     private File _tempFile;
-    private volatile boolean _isRunning = true;
-    private Thread _thread;
+    private AppScheduler.Task _task;
     private final ClientAppManager _mgr;
     private volatile ClientAppState _state = UNINITIALIZED;
     public static final String APP_NAME = "NewsFetcher";
@@ -141,32 +140,16 @@ public class NewsFetcher implements Runnable, EepGet.StatusListener, ClientApp {
     private static final long INITIAL_DELAY = 5 * 60 * 1000;
     private static final long RUN_DELAY = 30 * 60 * 1000;
 
+    /**
+     *  One check, run every RUN_DELAY on the app scheduler.
+     */
     public void run() {
-        changeState(RUNNING);
-        try {
-            run2();
-        } finally {
-            _mgr.unregister(this);
-            changeState(STOPPED);
-        }
-    }
-
-
-    private void run2() {
-        try {
-            Thread.sleep(INITIAL_DELAY);
-        } catch (InterruptedException ie) {
+        if (!_context.router().isAlive()) {
+            shutdown(null);
             return;
         }
-        while (_isRunning && _context.router().isAlive()) {
-            if (shouldFetchNews()) {
-                fetchNews();
-            }
-            try {
-                Thread.sleep(RUN_DELAY);
-            } catch (InterruptedException ie) {
-                break;
-            }
+        if (shouldFetchNews()) {
+            fetchNews();
         }
     }
 
@@ -435,8 +418,8 @@ public class NewsFetcher implements Runnable, EepGet.StatusListener, ClientApp {
      */
     public synchronized void startup() {
         changeState(STARTING);
-        _thread = new I2PAppThread(this, "NewsFetcher", true);
-        _thread.start();
+        _task = AppScheduler.getInstance().schedule(this, INITIAL_DELAY, RUN_DELAY, 0);
+        changeState(RUNNING);
     }
 
     /**
@@ -446,9 +429,11 @@ public class NewsFetcher implements Runnable, EepGet.StatusListener, ClientApp {
         if (_state != RUNNING)
             return;
         changeState(STOPPING);
-        _isRunning = false;
-        if (_thread != null)
-            _thread.interrupt();
+        if (_task != null) {
+            _task.cancel();
+            _task = null;
+        }
+        _mgr.unregister(this);
         changeState(STOPPED);
     }
 
@@ -27,10 +27,12 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import net.i2p.I2PAppContext;
+import net.i2p.android.i2ptunnel.util.DestinationCache;
 import net.i2p.android.i2ptunnel.util.TunnelUtil;
 import net.i2p.android.router.R;
 import net.i2p.android.router.util.Util;
 import net.i2p.android.util.FragmentUtils;
+import net.i2p.android.widget.SparklineView;
 import net.i2p.app.ClientAppState;
 import net.i2p.i2ptunnel.TunnelController;
 import net.i2p.i2ptunnel.TunnelControllerGroup;
@@ -136,25 +138,17 @@ public class TunnelDetailFragment extends Fragment {
             TextView description = (TextView) v.findViewById(R.id.tunnel_description);
             description.setText(mTunnel.getDescription());
 
-            if (!mTunnel.getDetails().isEmpty()) {
-                v.findViewById(R.id.tunnel_details_container).setVisibility(View.VISIBLE);
-                TextView details = (TextView) v.findViewById(R.id.tunnel_details);
-                View copyDetails = v.findViewById(R.id.tunnel_details_copy);
-                details.setText(mTunnel.getDetails());
-                if (!mTunnel.isClient()) {
-                    copyDetails.setVisibility(View.VISIBLE);
-                    copyDetails.setOnClickListener(new View.OnClickListener() {
-                        @Override
-                        public void onClick(View view) {
-                            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB)
-                                copyToClipbardLegacy();
-                            else
-                                copyToClipboardHoneycomb();
-
-                            Toast.makeText(getActivity(), R.string.address_copied_to_clipboard, Toast.LENGTH_SHORT).show();
-                        }
-                    });
-                }
+            updateDetails(v);
+            if (!mTunnel.isClient() && mTunnel.needsDestinationLoad()) {
+                DestinationCache.getInstance().loadAsync(
+                        mTunnel.getController().getPrivKeyFile(),
+                        new DestinationCache.Callback() {
+                            public void onDestinationLoaded(String keyFile, DestinationCache.Entry entry) {
+                                View view = getView();
+                                if (entry != null && view != null)
+                                    updateDetails(view);
+                            }
+                        });
             }
 
             View accessIfacePortItem = v.findViewById(R.id.tunnel_access_interface_port_item);
@@ -242,6 +236,110 @@ public class TunnelDetailFragment extends Fragment {
             open.setVisibility(View.GONE);
     }
 
+    private void updateDetails(View v) {
+        if (!mTunnel.getDetails().isEmpty()) {
+            v.findViewById(R.id.tunnel_details_container).setVisibility(View.VISIBLE);
+            TextView details = (TextView) v.findViewById(R.id.tunnel_details);
+            View copyDetails = v.findViewById(R.id.tunnel_details_copy);
+            details.setText(mTunnel.getDetails());
+            if (!mTunnel.isClient()) {
+                copyDetails.setVisibility(View.VISIBLE);
+                copyDetails.setOnClickListener(new View.OnClickListener() {
+                    @Override
+                    public void onClick(View view) {
+                        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB)
+                            copyToClipbardLegacy();
+                        else
+                            copyToClipboardHoneycomb();
+
+                        Toast.makeText(getActivity(), R.string.address_copied_to_clipboard, Toast.LENGTH_SHORT).show();
+                    }
+                });
+            }
+        }
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        TunnelStateMonitor.getInstance().addListener(mTunnelListener);
+        if (mTunnel != null)
+            TunnelMetricsCollector.getInstance().addListener(mMetricsListener);
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+        TunnelStateMonitor.getInstance().removeListener(mTunnelListener);
+        TunnelMetricsCollector.getInstance().removeListener(mMetricsListener);
+    }
+
+    private final TunnelMetricsCollector.Listener mMetricsListener = new TunnelMetricsCollector.Listener() {
+        public void onMetricsUpdated() {
+            View v = getView();
+            if (v != null && mTunnel != null)
+                updateMetrics(v);
+        }
+    };
+
+    private void updateMetrics(View v) {
+        TunnelMetrics metrics = TunnelMetricsCollector.getInstance().getMetrics(mTunnel.getController());
+        int count = metrics.getCount();
+        boolean show = mTunnel.isRunning() && count > 0;
+        updateMetric(v, show, metrics, TunnelMetrics.BYTES_IN, TunnelMetrics.TUNNELS_IN,
+                R.id.tunnel_traffic_in_item, R.id.tunnel_traffic_in, R.id.tunnel_traffic_in_graph);
+        updateMetric(v, show, metrics, TunnelMetrics.BYTES_OUT, TunnelMetrics.TUNNELS_OUT,
+                R.id.tunnel_traffic_out_item, R.id.tunnel_traffic_out, R.id.tunnel_traffic_out_graph);
+
+        // Sampled in the background, so there is something to see on opening
+        TunnelMetrics history = TunnelMetricsCollector.getInstance().getHistory(mTunnel.getController());
+        boolean showHistory = history.getCount() > 1;
+        v.findViewById(R.id.tunnel_traffic_history_item).setVisibility(showHistory ? View.VISIBLE : View.GONE);
+        if (!showHistory)
+            return;
+        float peakIn = updateGraph(v, history, TunnelMetrics.BYTES_IN, R.id.tunnel_traffic_history_in_graph);
+        float peakOut = updateGraph(v, history, TunnelMetrics.BYTES_OUT, R.id.tunnel_traffic_history_out_graph);
+        ((TextView) v.findViewById(R.id.tunnel_traffic_history)).setText(getString(
+                R.string.i2ptunnel_view_traffic_peak, Util.formatSpeed(peakIn), Util.formatSpeed(peakOut)));
+    }
+
+    /**
+     * @return the largest value shown
+     */
+    private static float updateGraph(View v, TunnelMetrics metrics, int metric, int graphId) {
+        SparklineView graph = (SparklineView) v.findViewById(graphId);
+        float[] values = new float[metrics.getCount()];
+        int count = metrics.copy(metric, values);
+        graph.setValues(values, count);
+        float peak = 0;
+        for (int i = 0; i < count; i++) {
+            peak = Math.max(peak, values[i]);
+        }
+        return peak;
+    }
+
+    private void updateMetric(View v, boolean show, TunnelMetrics metrics, int bytes, int tunnels,
+                              int itemId, int textId, int graphId) {
+        v.findViewById(itemId).setVisibility(show ? View.VISIBLE : View.GONE);
+        if (!show)
+            return;
+        TextView text = (TextView) v.findViewById(textId);
+        text.setText(getString(R.string.i2ptunnel_view_traffic,
+                Util.formatSpeed(metrics.getLatest(bytes)), (int) metrics.getLatest(tunnels)));
+        updateGraph(v, metrics, bytes, graphId);
+    }
+
+    private final TunnelStateMonitor.Listener mTunnelListener = new TunnelStateMonitor.Listener() {
+        public void onTunnelListChanged() {}
+
+        public void onTunnelStatusChanged(int tunnelId, TunnelController controller, int status) {
+            if (mTunnel != null && mTunnel.getController() == controller && mStatus != null) {
+                updateToolbar();
+                updateStatus();
+            }
+        }
+    };
+
     private void updateToolbar() {
         Menu menu = mToolbar.getMenu();
         MenuItem start = menu.findItem(R.id.action_start_tunnel);
@@ -282,6 +380,7 @@ public class TunnelDetailFragment extends Fragment {
         switch (item.getItemId()) {
         case R.id.action_start_tunnel:
             mTunnel.getController().startTunnelBackground();
+            TunnelStateMonitor.getInstance().refresh();
             Toast.makeText(getActivity().getApplicationContext(),
                     getResources().getString(R.string.i2ptunnel_msg_tunnel_starting)
                     + ' ' + mTunnel.getName(), Toast.LENGTH_LONG).show();
@@ -292,6 +391,7 @@ public class TunnelDetailFragment extends Fragment {
             return true;
         case R.id.action_stop_tunnel:
             mTunnel.getController().stopTunnel();
+            TunnelStateMonitor.getInstance().refresh();
             Toast.makeText(getActivity().getApplicationContext(),
                     getResources().getString(R.string.i2ptunnel_msg_tunnel_stopping)
                     + ' ' + mTunnel.getName(), Toast.LENGTH_LONG).show();
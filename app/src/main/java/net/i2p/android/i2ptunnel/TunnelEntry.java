@@ -6,12 +6,11 @@ import android.net.Uri;
 import android.widget.Toast;
 
 import net.i2p.I2PAppContext;
+import net.i2p.android.i2ptunnel.util.DestinationCache;
 import net.i2p.android.i2ptunnel.util.SaveTunnelTask;
 import net.i2p.android.i2ptunnel.util.TunnelUtil;
 import net.i2p.android.router.R;
 import net.i2p.android.router.util.Util;
-import net.i2p.data.Destination;
-import net.i2p.data.PrivateKeyFile;
 import net.i2p.i2ptunnel.TunnelController;
 import net.i2p.i2ptunnel.TunnelControllerGroup;
 import net.i2p.i2ptunnel.ui.TunnelConfig;
@@ -107,12 +106,20 @@ public class TunnelEntry {
     }
 
     public int getStatus() {
-        if (mController.getIsRunning()) {
-            if (isClient() && mController.getIsStandby())
+        return getStatus(mController);
+    }
+
+    /**
+     * @return one of the status constants
+     * @since 0.9.45
+     */
+    static int getStatus(TunnelController controller) {
+        if (controller.getIsRunning()) {
+            if (TunnelUtil.isClient(controller.getType()) && controller.getIsStandby())
                 return STANDBY;
             else
                 return RUNNING;
-        } else if (mController.getIsStarting()) return STARTING;
+        } else if (controller.getIsStarting()) return STARTING;
         else return NOT_RUNNING;
     }
 
@@ -221,30 +228,55 @@ public class TunnelEntry {
         return link;
     }
 
+    /**
+     * If not running, the destination comes from the DestinationCache,
+     * and is empty until it has been loaded.
+     *
+     * @see #loadDestination()
+     */
     public String getDestinationBase64() {
         String rv = mController.getMyDestination();
         if (rv != null)
             return rv;
-        // if not running, do this the hard way
-        String keyFile = mController.getPrivKeyFile();
-        if (keyFile != null && keyFile.trim().length() > 0) {
-            PrivateKeyFile pkf = new PrivateKeyFile(keyFile);
-            try {
-                Destination d = pkf.getDestination();
-                if (d != null)
-                    return d.toBase64();
-            } catch (Exception e) {}
-        }
+        DestinationCache.Entry entry = DestinationCache.getInstance().get(mController.getPrivKeyFile());
+        if (entry != null)
+            return entry.base64;
         return "";
     }
 
+    /**
+     * @see #getDestinationBase64()
+     */
     public String getDestHashBase32() {
         String rv = mController.getMyDestHashBase32();
         if (rv != null)
             return rv;
+        DestinationCache.Entry entry = DestinationCache.getInstance().get(mController.getPrivKeyFile());
+        if (entry != null)
+            return entry.base32;
         return "";
     }
 
+    /**
+     * Read the private key file into the DestinationCache if it is missing
+     * or has changed. Blocking, do not call on the main thread.
+     *
+     * @since 0.9.45
+     */
+    public void loadDestination() {
+        if (mController.getMyDestination() == null)
+            DestinationCache.getInstance().load(mController.getPrivKeyFile());
+    }
+
+    /**
+     * @return true if the destination is not available without reading the key file
+     * @since 0.9.45
+     */
+    public boolean needsDestinationLoad() {
+        return mController.getMyDestination() == null &&
+                DestinationCache.getInstance().get(mController.getPrivKeyFile()) == null;
+    }
+
     /* Data for some client and server tunnels */
 
     /* Other output formats */
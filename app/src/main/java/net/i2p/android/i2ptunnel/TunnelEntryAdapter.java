@@ -13,6 +13,7 @@ import android.widget.TextView;
 
 import net.i2p.android.router.R;
 import net.i2p.android.util.FragmentUtils;
+import net.i2p.i2ptunnel.TunnelController;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -83,6 +84,24 @@ public class TunnelEntryAdapter extends RecyclerView.Adapter<RecyclerView.ViewHo
         }
     }
 
+    /**
+     * Rebind the row for this controller, if it is in the list.
+     *
+     * @return true if the row was found
+     * @since 0.9.45
+     */
+    public boolean notifyTunnelChanged(TunnelController controller) {
+        if (mTunnels == null)
+            return false;
+        for (int i = 0; i < mTunnels.size(); i++) {
+            if (mTunnels.get(i).getController() == controller) {
+                notifyItemChanged(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
     public TunnelEntry getTunnel(int position) {
         if (position < 0)
             return null;
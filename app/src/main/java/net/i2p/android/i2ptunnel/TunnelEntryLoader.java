@@ -1,7 +1,6 @@
 package net.i2p.android.i2ptunnel;
 
 import android.content.Context;
-import android.os.Handler;
 import android.support.v4.content.AsyncTaskLoader;
 
 import net.i2p.android.router.util.Util;
@@ -16,14 +15,12 @@ public class TunnelEntryLoader extends AsyncTaskLoader<List<TunnelEntry>> {
     private final TunnelControllerGroup mGroup;
     private final boolean mClientTunnels;
     private List<TunnelEntry> mData;
-    private final Handler mHandler;
-    private TunnelControllerMonitor mMonitor;
+    private TunnelListMonitor mMonitor;
 
     public TunnelEntryLoader(Context context, TunnelControllerGroup tcg, boolean clientTunnels) {
         super(context);
         mGroup = tcg;
         mClientTunnels = clientTunnels;
-        mHandler = new Handler();
     }
 
     @Override
@@ -39,8 +36,12 @@ public class TunnelEntryLoader extends AsyncTaskLoader<List<TunnelEntry>> {
         for (int i = 0; i < controllers.size(); i++) {
             TunnelEntry tunnel = new TunnelEntry(getContext(), controllers.get(i), i);
             if ( (mClientTunnels && tunnel.isClient()) ||
-                 (!mClientTunnels && !tunnel.isClient()) )
+                 (!mClientTunnels && !tunnel.isClient()) ) {
+                // Read key files here rather than when binding rows
+                if (!tunnel.isClient())
+                    tunnel.loadDestination();
                 ret.add(tunnel);
+            }
         }
         return ret;
     }
@@ -80,8 +81,10 @@ public class TunnelEntryLoader extends AsyncTaskLoader<List<TunnelEntry>> {
         }
 
         // Begin monitoring the underlying data source.
-        mMonitor = new TunnelControllerMonitor();
-        mHandler.postDelayed(mMonitor, 50);
+        if (mMonitor == null) {
+            mMonitor = new TunnelListMonitor();
+            TunnelStateMonitor.getInstance().addListener(mMonitor);
+        }
 
         if (takeContentChanged() || mData == null) {
             // When the observer detects a change, it should call onContentChanged()
@@ -116,7 +119,7 @@ public class TunnelEntryLoader extends AsyncTaskLoader<List<TunnelEntry>> {
 
         // The Loader is being reset, so we should stop monitoring for changes.
         if (mMonitor != null) {
-            mHandler.removeCallbacks(mMonitor);
+            TunnelStateMonitor.getInstance().removeListener(mMonitor);
             mMonitor = null;
         }
     }
@@ -137,12 +140,15 @@ public class TunnelEntryLoader extends AsyncTaskLoader<List<TunnelEntry>> {
         // should be released here.
     }
 
-    private class TunnelControllerMonitor implements Runnable {
-        public void run() {
-            // There is no way (yet) to monitor for changes to the list of
-            // TunnelControllers, so just force a refresh every 10 seconds.
+    /**
+     * Reloads only when tunnels are added or removed. Status changes are
+     * applied to the existing rows by TunnelListFragment.
+     */
+    private class TunnelListMonitor implements TunnelStateMonitor.Listener {
+        public void onTunnelListChanged() {
             onContentChanged();
-            mHandler.postDelayed(this, 10 * 1000);
         }
+
+        public void onTunnelStatusChanged(int tunnelId, TunnelController controller, int status) {}
     }
 }
@@ -0,0 +1,338 @@
+package net.i2p.android.i2ptunnel;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.preference.PreferenceManager;
+
+import net.i2p.android.i2ptunnel.util.TunnelUtil;
+import net.i2p.android.router.R;
+import net.i2p.android.router.util.Connectivity;
+import net.i2p.android.router.util.Util;
+import net.i2p.android.util.AppScheduler;
+import net.i2p.i2ptunnel.TunnelController;
+import net.i2p.i2ptunnel.TunnelControllerGroup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ *  Applies an app-wide on-demand profile to the client tunnels:
+ *  open them when a local app first connects (i2cp.delayOpen), and
+ *  reduce and then close them when idle, with idle times chosen by
+ *  the current network type.
+ *  <p/>
+ *  Shared clients are left alone, as their session options are shared.
+ *  Only options the tunnel does not already set are added, and the keys
+ *  added are remembered, so they are removed again when the profile is
+ *  turned off or the tunnel stops being managed; options the user set
+ *  are never changed. The options are saved once when a tunnel becomes
+ *  managed; switching between Wi-Fi and mobile only updates the idle
+ *  times in memory.
+ *  Changes to delayOpen take effect the next time a tunnel starts;
+ *  idle times are updated on running tunnels.
+ *  <p/>
+ *  Also estimates the tunnel builds avoided while tunnels were closed.
+ *
+ *  @since 0.9.45
+ */
+public class TunnelLifecycleManager {
+    public static final String PROFILE_OFF = "off";
+    public static final String PROFILE_ON_DEMAND = "on_demand";
+    public static final String PROFILE_AGGRESSIVE = "aggressive";
+
+    /** The router will not close or reduce sooner than this */
+    private static final int MIN_IDLE_MINUTES = 5;
+    /** Client tunnel lifetime, after which a replacement is built */
+    private static final long TUNNEL_LIFETIME = 10 * 60 * 1000;
+    private static final long TICK = 60 * 1000;
+    private static final int DEFAULT_QUANTITY = 2;
+    /** controller name -> comma-separated option keys added by us */
+    private static final String OWNED_PREFS = "tunnel_lifecycle";
+
+    private static TunnelLifecycleManager sInstance;
+
+    private Context mCtx;
+    private HandlerThread mThread;
+    private Handler mHandler;
+    private AppScheduler.Task mTickTask;
+    private boolean mWifi;
+    /** controller name -> ms spent closed */
+    private final Map<String, Long> mStandbyTime = new HashMap<>();
+    private double mBuildsSaved;
+
+    public static synchronized TunnelLifecycleManager getInstance() {
+        if (sInstance == null)
+            sInstance = new TunnelLifecycleManager();
+        return sInstance;
+    }
+
+    private TunnelLifecycleManager() {}
+
+    /**
+     *  Call once TunnelControllerGroup has started.
+     */
+    public synchronized void start(Context ctx) {
+        if (mThread != null)
+            return;
+        mCtx = ctx.getApplicationContext();
+        mThread = new HandlerThread("TunnelLifecycle");
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mWifi = Connectivity.isConnectedWifi(mCtx);
+
+        mCtx.registerReceiver(mNetworkReceiver,
+                new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION), null, mHandler);
+        PreferenceManager.getDefaultSharedPreferences(mCtx)
+                .registerOnSharedPreferenceChangeListener(mPrefListener);
+        mHandler.post(mApply);
+        mTickTask = AppScheduler.getInstance().schedule(mTick, TICK, TICK, 0);
+    }
+
+    public synchronized void stop() {
+        if (mThread == null)
+            return;
+        try {
+            mCtx.unregisterReceiver(mNetworkReceiver);
+        } catch (IllegalArgumentException iae) {}
+        PreferenceManager.getDefaultSharedPreferences(mCtx)
+                .unregisterOnSharedPreferenceChangeListener(mPrefListener);
+        mTickTask.cancel();
+        mTickTask = null;
+        mThread.quit();
+        mThread = null;
+        mHandler = null;
+        Util.d("Tunnel lifecycle: " + getSummary());
+    }
+
+    /**
+     *  @return total time client tunnels spent closed since start
+     */
+    public synchronized long getStandbyTime() {
+        long rv = 0;
+        for (Long t : mStandbyTime.values()) {
+            rv += t;
+        }
+        return rv;
+    }
+
+    /**
+     *  @return estimated tunnel builds avoided since start
+     */
+    public synchronized int getBuildsSaved() {
+        return (int) mBuildsSaved;
+    }
+
+    public String getSummary() {
+        return getBuildsSaved() + " tunnel builds avoided, " +
+                (getStandbyTime() / 60000) + " tunnel-minutes closed";
+    }
+
+    private String getProfile() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mCtx);
+        return prefs.getString(mCtx.getString(R.string.PREF_TUNNEL_PROFILE), PROFILE_OFF);
+    }
+
+    private final BroadcastReceiver mNetworkReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            // Called on our thread
+            boolean wifi = Connectivity.isConnectedWifi(context);
+            if (wifi != mWifi && Connectivity.isConnected(context)) {
+                mWifi = wifi;
+                mApply.run();
+            }
+        }
+    };
+
+    private final SharedPreferences.OnSharedPreferenceChangeListener mPrefListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+        public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+            Handler handler = mHandler;
+            if (handler != null && mCtx.getString(R.string.PREF_TUNNEL_PROFILE).equals(key))
+                handler.post(mApply);
+        }
+    };
+
+    private final Runnable mApply = new Runnable() {
+        public void run() {
+            TunnelControllerGroup tcg = TunnelControllerGroup.getInstance();
+            if (tcg == null)
+                return;
+            String profile = getProfile();
+            if (PROFILE_OFF.equals(profile)) {
+                int restored = 0;
+                for (TunnelController controller : tcg.getControllers()) {
+                    if (restore(tcg, controller))
+                        restored++;
+                }
+                if (restored > 0)
+                    Util.d("Tunnel lifecycle profile off, restored " + restored + " tunnels");
+                return;
+            }
+
+            int closeMinutes;
+            if (PROFILE_AGGRESSIVE.equals(profile))
+                closeMinutes = mWifi ? 10 : MIN_IDLE_MINUTES;
+            else
+                closeMinutes = mWifi ? 30 : 10;
+            int reduceMinutes = Math.max(MIN_IDLE_MINUTES, closeMinutes / 2);
+
+            Map<String, String> options = new HashMap<>();
+            options.put("option.i2cp.delayOpen", "true");
+            options.put("option.i2cp.closeOnIdle", "true");
+            options.put("option.i2cp.closeIdleTime", Integer.toString(closeMinutes * 60 * 1000));
+            options.put("option.i2cp.reduceOnIdle", Boolean.toString(reduceMinutes < closeMinutes));
+            options.put("option.i2cp.reduceIdleTime", Integer.toString(reduceMinutes * 60 * 1000));
+            options.put("option.i2cp.reduceQuantity", "1");
+
+            int changed = 0;
+            for (TunnelController controller : tcg.getControllers()) {
+                if (!isManaged(controller)) {
+                    restore(tcg, controller);
+                    continue;
+                }
+                if (apply(tcg, controller, options))
+                    changed++;
+            }
+            Util.d("Tunnel lifecycle profile " + profile + (mWifi ? " (wifi)" : " (mobile)") +
+                    ": close after " + closeMinutes + " min, updated " + changed + " tunnels");
+        }
+    };
+
+    /**
+     *  Set the options on the keys we own or the tunnel does not set.
+     *  Saved only if we take over new keys.
+     *
+     *  @return true if anything changed
+     */
+    private boolean apply(TunnelControllerGroup tcg, TunnelController controller,
+                          Map<String, String> options) {
+        Set<String> owned = getOwned(controller);
+        Properties config = controller.getConfig("");
+        boolean dirty = false;
+        boolean newKeys = false;
+        for (Map.Entry<String, String> e : options.entrySet()) {
+            String key = e.getKey();
+            String old = config.getProperty(key);
+            if (old != null && !owned.contains(key))
+                continue; // the user's
+            if (old == null) {
+                owned.add(key);
+                newKeys = true;
+            }
+            if (!e.getValue().equals(old)) {
+                config.setProperty(key, e.getValue());
+                dirty = true;
+            }
+        }
+        if (!dirty)
+            return false;
+        controller.setConfig(config, "");
+        if (newKeys) {
+            setOwned(controller, owned);
+            save(tcg, controller);
+        }
+        return true;
+    }
+
+    /**
+     *  Remove the options we added.
+     *
+     *  @return true if anything changed
+     */
+    private boolean restore(TunnelControllerGroup tcg, TunnelController controller) {
+        Set<String> owned = getOwned(controller);
+        if (owned.isEmpty())
+            return false;
+        Properties config = controller.getConfig("");
+        for (String key : owned) {
+            config.remove(key);
+        }
+        controller.setConfig(config, "");
+        save(tcg, controller);
+        setOwned(controller, null);
+        return true;
+    }
+
+    private static void save(TunnelControllerGroup tcg, TunnelController controller) {
+        try {
+            tcg.saveConfig(controller);
+        } catch (IOException ioe) {
+            Util.e("Failed to save tunnel config for " + controller.getName(), ioe);
+        }
+    }
+
+    private Set<String> getOwned(TunnelController controller) {
+        String keys = mCtx.getSharedPreferences(OWNED_PREFS, 0).getString(controller.getName(), "");
+        Set<String> rv = new HashSet<>();
+        if (keys.length() > 0)
+            rv.addAll(Arrays.asList(keys.split(",")));
+        return rv;
+    }
+
+    /**
+     *  @param owned null or empty to forget the tunnel
+     */
+    private void setOwned(TunnelController controller, Set<String> owned) {
+        SharedPreferences.Editor edit = mCtx.getSharedPreferences(OWNED_PREFS, 0).edit();
+        if (owned == null || owned.isEmpty()) {
+            edit.remove(controller.getName());
+        } else {
+            StringBuilder buf = new StringBuilder();
+            for (String key : owned) {
+                if (buf.length() > 0)
+                    buf.append(',');
+                buf.append(key);
+            }
+            edit.putString(controller.getName(), buf.toString());
+        }
+        // Must be on disk before the tunnel config that depends on it
+        edit.commit();
+    }
+
+    private final Runnable mTick = new Runnable() {
+        public void run() {
+            TunnelControllerGroup tcg = TunnelControllerGroup.getInstance();
+            if (tcg != null)
+                account(tcg.getControllers());
+        }
+    };
+
+    private synchronized void account(List<TunnelController> controllers) {
+        for (TunnelController controller : controllers) {
+            if (!isManaged(controller) || !controller.getIsRunning() || !controller.getIsStandby())
+                continue;
+            String name = controller.getName();
+            Long t = mStandbyTime.get(name);
+            mStandbyTime.put(name, (t != null ? t : 0) + TICK);
+            Properties opts = controller.getClientOptionProps();
+            int quantity = getInt(opts, "inbound.quantity") + getInt(opts, "outbound.quantity");
+            mBuildsSaved += quantity * (double) TICK / TUNNEL_LIFETIME;
+        }
+    }
+
+    private static boolean isManaged(TunnelController controller) {
+        return TunnelUtil.isClient(controller.getType()) &&
+                !Boolean.parseBoolean(controller.getSharedClient());
+    }
+
+    private static int getInt(Properties props, String key) {
+        try {
+            return Integer.parseInt(props.getProperty(key, Integer.toString(DEFAULT_QUANTITY)));
+        } catch (NumberFormatException nfe) {
+            return DEFAULT_QUANTITY;
+        }
+    }
+}
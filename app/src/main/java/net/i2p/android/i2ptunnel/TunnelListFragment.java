@@ -16,9 +16,11 @@ import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.TextView;
 
 import com.pnikosis.materialishprogress.ProgressWheel;
 
+import net.i2p.android.i2ptunnel.util.TunnelBulkOperation;
 import net.i2p.android.router.R;
 import net.i2p.android.router.service.RouterService;
 import net.i2p.android.router.service.State;
@@ -26,6 +28,7 @@ import net.i2p.android.router.util.Util;
 import net.i2p.android.util.FragmentUtils;
 import net.i2p.android.widget.DividerItemDecoration;
 import net.i2p.android.widget.LoadingRecyclerView;
+import net.i2p.i2ptunnel.TunnelController;
 import net.i2p.i2ptunnel.TunnelControllerGroup;
 
 import java.util.ArrayList;
@@ -55,6 +58,7 @@ public class TunnelListFragment extends Fragment implements
 
     private LoadingRecyclerView mRecyclerView;
     private TunnelEntryAdapter mAdapter;
+    private TextView mProgressNotice;
     private boolean mClientTunnels;
 
     // Container Activity must implement this interface
@@ -93,10 +97,48 @@ public class TunnelListFragment extends Fragment implements
         View empty = v.findViewById(R.id.empty);
         ProgressWheel loading = (ProgressWheel) v.findViewById(R.id.loading);
         mRecyclerView.setLoadingView(empty, loading);
+        mProgressNotice = (TextView) v.findViewById(R.id.progress_notice);
 
         return v;
     }
 
+    /**
+     * Show the progress of a bulk operation on the tunnels over the list.
+     *
+     * @param operation null or complete to hide it
+     */
+    private void showProgress(TunnelBulkOperation operation) {
+        if (mProgressNotice == null)
+            return;
+        if (operation == null || operation.isComplete()) {
+            mProgressNotice.setVisibility(View.GONE);
+            return;
+        }
+        int title;
+        switch (operation.getAction()) {
+            case START:
+                title = R.string.i2ptunnel_msg_bulk_starting;
+                break;
+            case STOP:
+                title = R.string.i2ptunnel_msg_bulk_stopping;
+                break;
+            default:
+                title = R.string.i2ptunnel_msg_bulk_restarting;
+                break;
+        }
+        int total = operation.getTotal();
+        mProgressNotice.setText(getString(R.string.i2ptunnel_msg_bulk_progress,
+                getString(title, total), operation.getDone(), total));
+        mProgressNotice.setVisibility(View.VISIBLE);
+    }
+
+    private final TunnelBulkOperation.ProgressListener onBulkProgress =
+            new TunnelBulkOperation.ProgressListener() {
+        public void onProgress(TunnelBulkOperation operation) {
+            showProgress(operation);
+        }
+    };
+
     @Override
     public void onViewCreated(View view, Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
@@ -141,8 +183,24 @@ public class TunnelListFragment extends Fragment implements
         filter.addAction(RouterService.LOCAL_BROADCAST_STATE_NOTIFICATION);
         filter.addAction(RouterService.LOCAL_BROADCAST_STATE_CHANGED);
         lbm.registerReceiver(onStateChange, filter);
+
+        TunnelStateMonitor.getInstance().addListener(onTunnelChange);
+        TunnelBulkOperation.addProgressListener(onBulkProgress);
+        showProgress(TunnelBulkOperation.getRunning());
     }
 
+    /**
+     * Additions and removals are handled by the loader, which reloads the list.
+     */
+    private TunnelStateMonitor.Listener onTunnelChange = new TunnelStateMonitor.Listener() {
+        public void onTunnelListChanged() {}
+
+        public void onTunnelStatusChanged(int tunnelId, TunnelController controller, int status) {
+            if (mAdapter != null)
+                mAdapter.notifyTunnelChanged(controller);
+        }
+    };
+
     private State lastRouterState = null;
     private BroadcastReceiver onStateChange = new BroadcastReceiver() {
         @Override
@@ -213,6 +271,8 @@ public class TunnelListFragment extends Fragment implements
         super.onStop();
 
         LocalBroadcastManager.getInstance(getActivity()).unregisterReceiver(onStateChange);
+        TunnelStateMonitor.getInstance().removeListener(onTunnelChange);
+        TunnelBulkOperation.removeProgressListener(onBulkProgress);
     }
 
     public void addTunnel(TunnelEntry tunnelEntry) {
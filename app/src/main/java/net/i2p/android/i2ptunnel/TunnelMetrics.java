@@ -0,0 +1,100 @@
+package net.i2p.android.i2ptunnel;
+
+import net.i2p.data.DataFormatException;
+import net.i2p.data.Destination;
+import net.i2p.data.Hash;
+
+/**
+ *  Recent traffic history of one tunnel, as fixed-size ring buffers
+ *  of primitive samples, oldest first.
+ *  Filled by TunnelMetricsCollector on the main thread.
+ *
+ *  @since 0.9.45
+ */
+public class TunnelMetrics {
+    public static final int BYTES_IN = 0;
+    public static final int BYTES_OUT = 1;
+    public static final int TUNNELS_IN = 2;
+    public static final int TUNNELS_OUT = 3;
+    static final int METRICS = 4;
+
+    private final float[][] mValues;
+    private final int mSize;
+    private int mHead;
+    private int mCount;
+
+    /** last cumulative KB processed, -1 if unknown */
+    long mLastProcessedIn = -1;
+    long mLastProcessedOut = -1;
+    /** SystemClock.elapsedRealtime() of the last processed counts */
+    long mLastSampleTime;
+    private String mDestBase64;
+    private Hash mDestHash;
+
+    TunnelMetrics(int size) {
+        mSize = size;
+        mValues = new float[METRICS][size];
+    }
+
+    /**
+     *  @param sample one value per metric
+     */
+    void add(float[] sample) {
+        for (int i = 0; i < METRICS; i++) {
+            mValues[i][mHead] = sample[i];
+        }
+        mHead = (mHead + 1) % mSize;
+        if (mCount < mSize)
+            mCount++;
+    }
+
+    /**
+     *  @return the number of samples held
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     *  Copy a metric's samples, oldest first.
+     *
+     *  @param metric one of the metric constants
+     *  @param out at least getCount() long
+     *  @return the number of samples copied
+     */
+    public int copy(int metric, float[] out) {
+        int start = (mHead - mCount + mSize) % mSize;
+        for (int i = 0; i < mCount; i++) {
+            out[i] = mValues[metric][(start + i) % mSize];
+        }
+        return mCount;
+    }
+
+    /**
+     *  @return the newest sample, or 0 if none
+     */
+    public float getLatest(int metric) {
+        if (mCount == 0)
+            return 0;
+        return mValues[metric][(mHead - 1 + mSize) % mSize];
+    }
+
+    /**
+     *  Parsing the destination is only done when it changes.
+     *
+     *  @return null if not parseable
+     */
+    Hash getDestHash(String base64) {
+        if (!base64.equals(mDestBase64)) {
+            mDestBase64 = base64;
+            mLastProcessedIn = -1;
+            mLastProcessedOut = -1;
+            try {
+                mDestHash = new Destination(base64).calculateHash();
+            } catch (DataFormatException dfe) {
+                mDestHash = null;
+            }
+        }
+        return mDestHash;
+    }
+}
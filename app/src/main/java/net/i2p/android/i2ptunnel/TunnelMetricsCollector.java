@@ -0,0 +1,221 @@
+package net.i2p.android.i2ptunnel;
+
+import android.os.SystemClock;
+
+import net.i2p.android.router.util.PowerProfileManager;
+import net.i2p.android.router.util.Util;
+import net.i2p.android.util.AppScheduler;
+import net.i2p.android.util.MemoryGovernor;
+import net.i2p.data.Hash;
+import net.i2p.i2ptunnel.TunnelController;
+import net.i2p.i2ptunnel.TunnelControllerGroup;
+import net.i2p.router.RouterContext;
+import net.i2p.router.tunnel.pool.TunnelPool;
+
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ *  Samples per-tunnel traffic from the client tunnel pools of each
+ *  tunnel's destination.
+ *  <p/>
+ *  While the router runs, every tunnel is sampled once a minute into a
+ *  long history, so it is there when the user comes to look. While
+ *  anyone is listening, they are also sampled every few seconds into a
+ *  short recent history.
+ *  <p/>
+ *  Traffic is the change in the pools' lifetime processed count, which
+ *  the router keeps in 1 KB units; tunnel-shared clients all report the
+ *  traffic of the shared destination.
+ *  <p/>
+ *  Sampling is done on the main thread, and listeners are called there.
+ *  getMetrics() and getHistory() must be called on the main thread.
+ *
+ *  @since 0.9.45
+ */
+public class TunnelMetricsCollector implements PowerProfileManager.Listener {
+    static final long INTERVAL = 5 * 1000;
+    /** 5 minutes of history */
+    static final int HISTORY_SIZE = 60;
+    static final long BACKGROUND_INTERVAL = 60 * 1000;
+    /** 6 hours of history */
+    static final int BACKGROUND_HISTORY_SIZE = 360;
+
+    private static TunnelMetricsCollector sInstance;
+
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+    /** history survives while the controller does */
+    private final Map<TunnelController, TunnelMetrics> mMetrics = new WeakHashMap<>();
+    private final Map<TunnelController, TunnelMetrics> mHistory = new WeakHashMap<>();
+    private final float[] mSample = new float[TunnelMetrics.METRICS];
+    private AppScheduler.Task mTask;
+    private AppScheduler.Task mBackgroundTask;
+
+    public interface Listener {
+        void onMetricsUpdated();
+    }
+
+    public static synchronized TunnelMetricsCollector getInstance() {
+        if (sInstance == null)
+            sInstance = new TunnelMetricsCollector();
+        return sInstance;
+    }
+
+    private TunnelMetricsCollector() {}
+
+    /**
+     *  Start the background sampling while the router runs.
+     */
+    public synchronized void start() {
+        if (mBackgroundTask != null)
+            return;
+        mBackgroundTask = AppScheduler.getInstance().schedule(mBackgroundSampler,
+                BACKGROUND_INTERVAL, BACKGROUND_INTERVAL, AppScheduler.FLAG_MAIN_THREAD);
+        PowerProfileManager.getInstance().addListener(this);
+        MemoryGovernor.getInstance().register("Tunnel history",
+                MemoryGovernor.PRIORITY_HISTORY, mTrimmer);
+    }
+
+    public synchronized void stop() {
+        if (mBackgroundTask == null)
+            return;
+        mBackgroundTask.cancel();
+        mBackgroundTask = null;
+        PowerProfileManager.getInstance().removeListener(this);
+        MemoryGovernor.getInstance().unregister(mTrimmer);
+    }
+
+    /**
+     *  Nobody is looking at the graphs while the device is idle
+     */
+    public synchronized void onLowPowerChanged(boolean lowPower) {
+        if (mBackgroundTask != null)
+            mBackgroundTask.setPeriod(lowPower ? PowerProfileManager.IDLE_UPDATE_INTERVAL
+                                               : BACKGROUND_INTERVAL);
+    }
+
+    public void addListener(Listener listener) {
+        if (mListeners.contains(listener))
+            return;
+        mListeners.add(listener);
+        if (mListeners.size() == 1)
+            mTask = AppScheduler.getInstance().schedule(mSampler, 0, INTERVAL,
+                    AppScheduler.FLAG_MAIN_THREAD | AppScheduler.FLAG_UI_ONLY);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+        if (mListeners.isEmpty() && mTask != null) {
+            mTask.cancel();
+            mTask = null;
+            // Only kept while someone is watching
+            mMetrics.clear();
+        }
+    }
+
+    /**
+     *  @return the recent history for this tunnel, possibly empty, never null
+     */
+    public TunnelMetrics getMetrics(TunnelController controller) {
+        return get(mMetrics, controller, HISTORY_SIZE);
+    }
+
+    /**
+     *  @return the long history for this tunnel, possibly empty, never null
+     */
+    public TunnelMetrics getHistory(TunnelController controller) {
+        return get(mHistory, controller, BACKGROUND_HISTORY_SIZE);
+    }
+
+    private static TunnelMetrics get(Map<TunnelController, TunnelMetrics> map,
+                                     TunnelController controller, int size) {
+        TunnelMetrics rv = map.get(controller);
+        if (rv == null) {
+            rv = new TunnelMetrics(size);
+            map.put(controller, rv);
+        }
+        return rv;
+    }
+
+    private final Runnable mSampler = new Runnable() {
+        public void run() {
+            if (mListeners.isEmpty())
+                return;
+            sample(mMetrics, HISTORY_SIZE);
+            for (Listener listener : mListeners) {
+                listener.onMetricsUpdated();
+            }
+        }
+    };
+
+    private final Runnable mBackgroundSampler = new Runnable() {
+        public void run() {
+            sample(mHistory, BACKGROUND_HISTORY_SIZE);
+        }
+    };
+
+    private void sample(Map<TunnelController, TunnelMetrics> map, int size) {
+        RouterContext ctx = Util.getRouterContext();
+        TunnelControllerGroup tcg = TunnelControllerGroup.getInstance();
+        if (ctx == null || tcg == null)
+            return;
+        long now = SystemClock.elapsedRealtime();
+        for (TunnelController controller : tcg.getControllers()) {
+            TunnelMetrics metrics = get(map, controller, size);
+            String dest = controller.getMyDestination();
+            Hash hash = dest != null ? metrics.getDestHash(dest) : null;
+            if (hash == null) {
+                // Not running
+                metrics.mLastProcessedIn = -1;
+                metrics.mLastProcessedOut = -1;
+                mSample[TunnelMetrics.BYTES_IN] = 0;
+                mSample[TunnelMetrics.BYTES_OUT] = 0;
+                mSample[TunnelMetrics.TUNNELS_IN] = 0;
+                mSample[TunnelMetrics.TUNNELS_OUT] = 0;
+                metrics.add(mSample);
+                continue;
+            }
+
+            TunnelPool in = ctx.tunnelManager().getInboundPool(hash);
+            TunnelPool out = ctx.tunnelManager().getOutboundPool(hash);
+            long processedIn = in != null ? in.getLifetimeProcessed() : 0;
+            long processedOut = out != null ? out.getLifetimeProcessed() : 0;
+            long elapsed = now - metrics.mLastSampleTime;
+            mSample[TunnelMetrics.BYTES_IN] = rate(metrics.mLastProcessedIn, processedIn, elapsed);
+            mSample[TunnelMetrics.BYTES_OUT] = rate(metrics.mLastProcessedOut, processedOut, elapsed);
+            mSample[TunnelMetrics.TUNNELS_IN] = in != null ? in.listTunnels().size() : 0;
+            mSample[TunnelMetrics.TUNNELS_OUT] = out != null ? out.listTunnels().size() : 0;
+            metrics.mLastProcessedIn = processedIn;
+            metrics.mLastProcessedOut = processedOut;
+            metrics.mLastSampleTime = now;
+            metrics.add(mSample);
+        }
+    }
+
+    /**
+     *  @param last KB, or -1 for no previous sample
+     *  @param elapsed ms since the last sample
+     *  @return bytes per second
+     */
+    private static float rate(long last, long current, long elapsed) {
+        if (last < 0 || current < last || elapsed <= 0)
+            return 0;
+        return (current - last) * 1024f * 1000 / elapsed;
+    }
+
+    /**
+     *  Drops the long histories. They are rebuilt from then on.
+     */
+    private final MemoryGovernor.Cache mTrimmer = new MemoryGovernor.Cache() {
+        public long getSize() {
+            return (long) mHistory.size() * TunnelMetrics.METRICS * BACKGROUND_HISTORY_SIZE * 4;
+        }
+
+        public void trim(boolean all) {
+            if (all)
+                mHistory.clear();
+        }
+    };
+}
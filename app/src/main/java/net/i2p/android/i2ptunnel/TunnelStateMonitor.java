@@ -0,0 +1,141 @@
+package net.i2p.android.i2ptunnel;
+
+import net.i2p.android.util.AppScheduler;
+import net.i2p.i2ptunnel.TunnelController;
+import net.i2p.i2ptunnel.TunnelControllerGroup;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ *  Feed of changes to the TunnelControllers: tunnels added, removed,
+ *  and moving between TunnelEntry statuses.
+ *  <p/>
+ *  TunnelControllerGroup has no listener interface, so while anyone is
+ *  listening the controller status flags are sampled on the main thread,
+ *  and only differences from the previous sample are delivered.
+ *  Sampling is faster while a tunnel is starting, and callers that change
+ *  a tunnel can call refresh() to get the change delivered at once.
+ *  <p/>
+ *  All methods must be called on the main thread, and listeners are
+ *  called there.
+ *
+ *  @since 0.9.45
+ */
+public class TunnelStateMonitor {
+    /** while a tunnel is starting */
+    private static final long FAST_INTERVAL = 500;
+    private static final long SLOW_INTERVAL = 2000;
+
+    private static TunnelStateMonitor sInstance;
+
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+    /** controller -> last status, in controller order */
+    private Map<TunnelController, Integer> mLastStatus;
+    private AppScheduler.Task mTask;
+
+    public interface Listener {
+        /**
+         *  Tunnels were added or removed. Tunnel IDs may have changed.
+         */
+        void onTunnelListChanged();
+
+        /**
+         *  @param tunnelId index of the controller in the TunnelControllerGroup
+         *  @param status one of the TunnelEntry status constants
+         */
+        void onTunnelStatusChanged(int tunnelId, TunnelController controller, int status);
+    }
+
+    public static synchronized TunnelStateMonitor getInstance() {
+        if (sInstance == null)
+            sInstance = new TunnelStateMonitor();
+        return sInstance;
+    }
+
+    private TunnelStateMonitor() {}
+
+    public void addListener(Listener listener) {
+        if (mListeners.contains(listener))
+            return;
+        mListeners.add(listener);
+        if (mListeners.size() == 1) {
+            mLastStatus = null;
+            mTask = AppScheduler.getInstance().schedule(mSampler, 0, SLOW_INTERVAL,
+                    AppScheduler.FLAG_MAIN_THREAD | AppScheduler.FLAG_UI_ONLY);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+        if (mListeners.isEmpty() && mTask != null) {
+            mTask.cancel();
+            mTask = null;
+            mLastStatus = null;
+        }
+    }
+
+    /**
+     *  Check the controllers now, e.g. after starting or stopping one.
+     */
+    public void refresh() {
+        if (mTask != null)
+            mTask.runNow();
+    }
+
+    private final Runnable mSampler = new Runnable() {
+        public void run() {
+            AppScheduler.Task task = mTask;
+            if (task == null)
+                return;
+            boolean starting = sample();
+            task.setPeriod(starting ? FAST_INTERVAL : SLOW_INTERVAL);
+        }
+    };
+
+    /**
+     *  @return true if any tunnel is starting
+     */
+    private boolean sample() {
+        TunnelControllerGroup tcg = TunnelControllerGroup.getInstance();
+        List<TunnelController> controllers = tcg != null ? tcg.getControllers() :
+                new ArrayList<TunnelController>();
+
+        Map<TunnelController, Integer> current = new IdentityHashMap<>(controllers.size());
+        boolean starting = false;
+        for (TunnelController controller : controllers) {
+            int status = TunnelEntry.getStatus(controller);
+            current.put(controller, status);
+            if (status == TunnelEntry.STARTING)
+                starting = true;
+        }
+
+        Map<TunnelController, Integer> last = mLastStatus;
+        mLastStatus = current;
+        if (last == null)
+            return starting;
+
+        boolean listChanged = last.size() != current.size() ||
+                !last.keySet().containsAll(current.keySet());
+        if (listChanged) {
+            for (Listener listener : mListeners) {
+                listener.onTunnelListChanged();
+            }
+            return starting;
+        }
+
+        for (int i = 0; i < controllers.size(); i++) {
+            TunnelController controller = controllers.get(i);
+            int status = current.get(controller);
+            if (status != last.get(controller)) {
+                for (Listener listener : mListeners) {
+                    listener.onTunnelStatusChanged(i, controller, status);
+                }
+            }
+        }
+        return starting;
+    }
+}
@@ -1,6 +1,7 @@
 package net.i2p.android.i2ptunnel;
 
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 import android.support.v4.app.ActivityCompat;
@@ -10,6 +11,7 @@ import android.support.v4.app.FragmentManager;
 import android.support.v4.app.FragmentPagerAdapter;
 import android.support.v4.util.Pair;
 import android.support.v4.view.ViewPager;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -22,11 +24,13 @@ import android.widget.Toast;
 import com.viewpagerindicator.TitlePageIndicator;
 
 import net.i2p.android.i2ptunnel.preferences.EditTunnelContainerFragment;
+import net.i2p.android.i2ptunnel.util.TunnelBulkOperation;
 import net.i2p.android.i2ptunnel.util.TunnelUtil;
 import net.i2p.android.router.R;
 import net.i2p.android.router.util.Util;
 import net.i2p.android.util.FragmentUtils;
 import net.i2p.app.ClientAppState;
+import net.i2p.i2ptunnel.TunnelController;
 import net.i2p.i2ptunnel.TunnelControllerGroup;
 import net.i2p.i2ptunnel.ui.TunnelConfig;
 import net.i2p.router.RouterContext;
@@ -186,30 +190,50 @@ public class TunnelsContainer extends Fragment implements
             return false;
 
         // Handle presses on the action bar items
-        List<String> msgs;
+        TunnelBulkOperation.Action action;
         switch (item.getItemId()) {
             case R.id.action_start_all_tunnels:
-                msgs = tcg.startAllControllers();
+                action = TunnelBulkOperation.Action.START;
                 break;
             case R.id.action_stop_all_tunnels:
-                msgs = tcg.stopAllControllers();
+                action = TunnelBulkOperation.Action.STOP;
                 break;
             case R.id.action_restart_all_tunnels:
-                // Do a manual stop-start cycle, because tcg.restartAllControllers() happens in the
-                // foreground, whereas tcg.startAllControllers() fires off threads for starting.
-                msgs = tcg.stopAllControllers();
-                msgs.addAll(tcg.startAllControllers());
+                action = TunnelBulkOperation.Action.RESTART;
                 break;
             default:
                 return super.onOptionsItemSelected(item);
         }
-        // TODO: Do something with the other messages
-        if (msgs.size() > 0)
-            Toast.makeText(getActivity().getApplicationContext(),
-                    msgs.get(0), Toast.LENGTH_LONG).show();
+        // Progress is shown by the TunnelListFragments while they are visible
+        Context ctx = getActivity().getApplicationContext();
+        if (!new TunnelBulkOperation(action, tcg.getControllers(), new BulkListener(ctx)).execute())
+            Toast.makeText(ctx, R.string.i2ptunnel_msg_bulk_busy, Toast.LENGTH_SHORT).show();
         return true;
     }
 
+    /**
+     * Outlives this fragment, so holds only the application context.
+     */
+    private static class BulkListener implements TunnelBulkOperation.Listener {
+        private final Context mCtx;
+
+        BulkListener(Context ctx) {
+            mCtx = ctx;
+        }
+
+        @Override
+        public void onTunnelDone(TunnelController controller, int done, int total) {
+            // Update the row for this tunnel
+            TunnelStateMonitor.getInstance().refresh();
+        }
+
+        @Override
+        public void onComplete(List<String> msgs) {
+            if (msgs.size() > 0)
+                Toast.makeText(mCtx, TextUtils.join("\n", msgs), Toast.LENGTH_LONG).show();
+        }
+    }
+
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (requestCode == TUNNEL_WIZARD_REQUEST) {
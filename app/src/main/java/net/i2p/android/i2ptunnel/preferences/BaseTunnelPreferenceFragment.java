@@ -1,5 +1,6 @@
 package net.i2p.android.i2ptunnel.preferences;
 
+import android.content.SharedPreferences;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.v7.preference.Preference;
@@ -10,6 +11,7 @@ import android.widget.Toast;
 import net.i2p.android.i2ptunnel.util.SaveTunnelTask;
 import net.i2p.android.i2ptunnel.util.TunnelUtil;
 import net.i2p.android.preferences.util.CustomPreferenceFragment;
+import net.i2p.android.router.I2PConstants;
 import net.i2p.android.router.R;
 import net.i2p.android.router.util.Util;
 import net.i2p.i2ptunnel.TunnelControllerGroup;
@@ -25,6 +27,17 @@ public abstract class BaseTunnelPreferenceFragment extends CustomPreferenceFragm
 
     protected TunnelControllerGroup mGroup;
     protected int mTunnelId;
+    /** true if a preference has been changed since the last save */
+    private boolean mDirty;
+
+    private final SharedPreferences.OnSharedPreferenceChangeListener mChangeListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+        public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+            // Ignore our own bookkeeping
+            if (!key.startsWith(I2PConstants.ANDROID_PREF_PREFIX))
+                mDirty = true;
+        }
+    };
 
     @Override
     public void onCreatePreferences(Bundle paramBundle, String s) {
@@ -54,6 +67,8 @@ public abstract class BaseTunnelPreferenceFragment extends CustomPreferenceFragm
             }
             // https://stackoverflow.com/questions/17880437/which-settings-file-does-preferencefragment-read-write
             getPreferenceManager().setSharedPreferencesName(TunnelUtil.getPreferencesFilename(mTunnelId));
+            getPreferenceManager().getSharedPreferences()
+                    .registerOnSharedPreferenceChangeListener(mChangeListener);
             try {
                 loadPreferences();
             } catch (IllegalArgumentException iae) {
@@ -83,15 +98,32 @@ public abstract class BaseTunnelPreferenceFragment extends CustomPreferenceFragm
             saveTunnel();
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        getPreferenceManager().getSharedPreferences()
+                .unregisterOnSharedPreferenceChangeListener(mChangeListener);
+    }
+
+    /**
+     * Only saves if something was changed, and only if the resulting
+     * config differs from the tunnel's current one.
+     */
     private void saveTunnel() {
-        if (mGroup != null) {
+        if (mGroup != null && mDirty) {
+            mDirty = false;
             TunnelConfig cfg = TunnelUtil.createConfigFromPreferences(getActivity(), mGroup, mTunnelId);
+            if (TunnelUtil.isUnchanged(mGroup, mTunnelId, cfg)) {
+                TunnelUtil.markPreferencesSynced(getActivity(), mGroup, mTunnelId);
+                return;
+            }
             SaveTunnelTask task = new SaveTunnelTask(mGroup, mTunnelId, cfg);
             try {
                 // TODO: There used to be a possible ANR here, because the underlying I2P code
                 // checks if the session is open as part of updating its config. We may need to save
                 // completely asynchronously (and ensure we do actually save before the app closes).
                 task.execute().get(2, TimeUnit.SECONDS);
+                TunnelUtil.markPreferencesSynced(getActivity(), mGroup, mTunnelId);
             } catch (InterruptedException e) {
                 Util.e("Interrupted while saving tunnel config", e);
             } catch (ExecutionException e) {
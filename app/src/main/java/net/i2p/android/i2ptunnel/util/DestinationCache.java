@@ -0,0 +1,154 @@
+package net.i2p.android.i2ptunnel.util;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import net.i2p.I2PAppContext;
+import net.i2p.android.router.util.Util;
+import net.i2p.data.Destination;
+import net.i2p.data.PrivateKeyFile;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ *  Parsed destinations of tunnel private key files, so that tunnels which
+ *  are not running can be displayed without reading and parsing the key
+ *  file on every bind.
+ *  <p/>
+ *  get() never does I/O, and is safe to call on the main thread.
+ *  load() checks the file's modification time and size, and parses it
+ *  again only if it has changed; it must be called off the main thread,
+ *  or via loadAsync().
+ *
+ *  @since 0.9.45
+ */
+public class DestinationCache {
+    private static final DestinationCache sInstance = new DestinationCache();
+
+    /** absolute path -> entry */
+    private final ConcurrentHashMap<String, Entry> mEntries = new ConcurrentHashMap<>();
+    private final ExecutorService mExecutor;
+    private final Handler mHandler;
+
+    public static class Entry {
+        final long lastModified;
+        final long length;
+        public final Destination destination;
+        public final String base64;
+        public final String base32;
+
+        Entry(long lastModified, long length, Destination destination) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.destination = destination;
+            this.base64 = destination.toBase64();
+            this.base32 = destination.toBase32();
+        }
+    }
+
+    public interface Callback {
+        /**
+         *  Called on the main thread.
+         *
+         *  @param entry null if the file could not be read
+         */
+        void onDestinationLoaded(String keyFile, Entry entry);
+    }
+
+    public static DestinationCache getInstance() {
+        return sInstance;
+    }
+
+    private DestinationCache() {
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "DestinationCache");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     *  @param keyFile as configured on the TunnelController, may be relative
+     *                 to the config dir, may be null
+     *  @return the last loaded entry, possibly stale, or null
+     */
+    public Entry get(String keyFile) {
+        File f = resolve(keyFile);
+        if (f == null)
+            return null;
+        return mEntries.get(f.getAbsolutePath());
+    }
+
+    /**
+     *  Blocking. Do not call on the main thread.
+     *
+     *  @param keyFile as configured on the TunnelController, may be null
+     *  @return the current entry, or null if the file cannot be read
+     */
+    public Entry load(String keyFile) {
+        File f = resolve(keyFile);
+        if (f == null)
+            return null;
+        String key = f.getAbsolutePath();
+        long lastModified = f.lastModified();
+        long length = f.length();
+        Entry cached = mEntries.get(key);
+        if (cached != null && cached.lastModified == lastModified && cached.length == length)
+            return cached;
+
+        if (lastModified == 0) {
+            // File is gone
+            mEntries.remove(key);
+            return null;
+        }
+        try {
+            Destination d = new PrivateKeyFile(f).getDestination();
+            if (d != null) {
+                Entry entry = new Entry(lastModified, length, d);
+                mEntries.put(key, entry);
+                return entry;
+            }
+        } catch (Exception e) {
+            Util.d("Cannot read private key file " + f + ": " + e);
+        }
+        mEntries.remove(key);
+        return null;
+    }
+
+    /**
+     *  Load in the background and call back on the main thread.
+     */
+    public void loadAsync(final String keyFile, final Callback callback) {
+        mExecutor.execute(new Runnable() {
+            public void run() {
+                final Entry entry = load(keyFile);
+                if (callback != null) {
+                    mHandler.post(new Runnable() {
+                        public void run() {
+                            callback.onDestinationLoaded(keyFile, entry);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     *  Same as TunnelController: relative paths are in the config dir.
+     */
+    private static File resolve(String keyFile) {
+        if (keyFile == null || keyFile.trim().length() <= 0)
+            return null;
+        File f = new File(keyFile.trim());
+        if (!f.isAbsolute())
+            f = new File(I2PAppContext.getGlobalContext().getConfigDir(), keyFile.trim());
+        return f;
+    }
+}
@@ -0,0 +1,224 @@
+package net.i2p.android.i2ptunnel.util;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import net.i2p.android.router.util.Util;
+import net.i2p.i2ptunnel.TunnelController;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Start, stop or restart a set of tunnels concurrently.
+ *
+ * TunnelControllerGroup.startAllControllers() starts a thread per tunnel,
+ * stopAllControllers() stops them one at a time, and restartAllControllers()
+ * restarts them one at a time in the caller's thread. This runs each tunnel's
+ * blocking start, stop or stop-start cycle on its own thread instead, since
+ * they wait on tunnel builds, not the CPU, so a set of tunnels recovers in
+ * about the time of the slowest one, and reports each tunnel as it finishes.
+ * <p/>
+ * Only one operation runs at a time. Screens that show its progress register
+ * a ProgressListener while visible, so the operation does not hold on to them.
+ *
+ * @since 0.9.45
+ */
+public class TunnelBulkOperation {
+    /** guarded by the class */
+    private static TunnelBulkOperation sRunning;
+    private static final List<ProgressListener> sProgressListeners = new CopyOnWriteArrayList<>();
+
+    public enum Action {
+        START,
+        STOP,
+        RESTART
+    }
+
+    /**
+     * Called on the main thread.
+     */
+    public interface Listener {
+        /**
+         * @param done the number of tunnels finished so far, including this one
+         */
+        void onTunnelDone(TunnelController controller, int done, int total);
+
+        /**
+         * @param msgs the messages logged by the tunnels during the operation
+         */
+        void onComplete(List<String> msgs);
+    }
+
+    /**
+     * Called on the main thread.
+     */
+    public interface ProgressListener {
+        /**
+         * An operation started, a tunnel finished, or it completed.
+         */
+        void onProgress(TunnelBulkOperation operation);
+    }
+
+    private final Action mAction;
+    private final List<TunnelController> mControllers;
+    private final Listener mListener;
+    private final Handler mHandler;
+    private final AtomicInteger mDone = new AtomicInteger();
+    private final List<String> mMsgs = Collections.synchronizedList(new ArrayList<String>());
+    private volatile boolean mComplete;
+
+    /**
+     * @param listener may be null
+     */
+    public TunnelBulkOperation(Action action, List<TunnelController> controllers,
+                               Listener listener) {
+        mAction = action;
+        mControllers = new ArrayList<>(controllers);
+        mListener = listener;
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * @return the operation running now, or null
+     */
+    public static synchronized TunnelBulkOperation getRunning() {
+        return sRunning;
+    }
+
+    public static void addProgressListener(ProgressListener listener) {
+        sProgressListeners.add(listener);
+    }
+
+    public static void removeProgressListener(ProgressListener listener) {
+        sProgressListeners.remove(listener);
+    }
+
+    public Action getAction() {
+        return mAction;
+    }
+
+    /**
+     * @return the number of tunnels finished so far
+     */
+    public int getDone() {
+        return mDone.get();
+    }
+
+    public int getTotal() {
+        return mControllers.size();
+    }
+
+    public boolean isComplete() {
+        return mComplete;
+    }
+
+    /**
+     * Returns immediately.
+     *
+     * @return false if another operation is still running, and this one was not started
+     */
+    public boolean execute() {
+        synchronized (TunnelBulkOperation.class) {
+            if (sRunning != null)
+                return false;
+            sRunning = this;
+        }
+        final int total = mControllers.size();
+        notifyProgress();
+        if (total == 0) {
+            complete();
+            return true;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                total, new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "Tunnel " + mAction.name().toLowerCase(Locale.US) +
+                                ' ' + mCount.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        for (final TunnelController controller : mControllers) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        runOne(controller);
+                    } catch (RuntimeException re) {
+                        Util.e("Error in tunnel " + mAction + " of " + controller.getName(), re);
+                    }
+                    mMsgs.addAll(controller.clearMessages());
+                    final int done = mDone.incrementAndGet();
+                    mHandler.post(new Runnable() {
+                        public void run() {
+                            if (mListener != null)
+                                mListener.onTunnelDone(controller, done, total);
+                        }
+                    });
+                    notifyProgress();
+                    if (done == total)
+                        complete();
+                }
+            });
+        }
+        // Threads exit once the queue is drained
+        executor.shutdown();
+        return true;
+    }
+
+    private void notifyProgress() {
+        mHandler.post(new Runnable() {
+            public void run() {
+                for (ProgressListener listener : sProgressListeners) {
+                    listener.onProgress(TunnelBulkOperation.this);
+                }
+            }
+        });
+    }
+
+    private void runOne(TunnelController controller) {
+        switch (mAction) {
+            case START:
+                if (!controller.getIsRunning() && !controller.getIsStarting())
+                    controller.startTunnel();
+                break;
+            case STOP:
+                if (controller.getIsRunning() || controller.getIsStarting())
+                    controller.stopTunnel();
+                break;
+            case RESTART:
+                if (controller.getIsRunning() || controller.getIsStarting())
+                    controller.stopTunnel();
+                controller.startTunnel();
+                break;
+        }
+    }
+
+    private void complete() {
+        final List<String> msgs;
+        synchronized (mMsgs) {
+            msgs = new ArrayList<>(mMsgs);
+        }
+        synchronized (TunnelBulkOperation.class) {
+            sRunning = null;
+        }
+        mComplete = true;
+        mHandler.post(new Runnable() {
+            public void run() {
+                if (mListener != null)
+                    mListener.onComplete(msgs);
+            }
+        });
+        notifyProgress();
+    }
+}
@@ -9,13 +9,27 @@ import net.i2p.I2PAppContext;
 import net.i2p.android.router.R;
 import net.i2p.android.router.util.Util;
 import net.i2p.android.wizard.model.Page;
+import net.i2p.data.DataHelper;
 import net.i2p.i2ptunnel.TunnelController;
 import net.i2p.i2ptunnel.TunnelControllerGroup;
 import net.i2p.i2ptunnel.ui.GeneralHelper;
 import net.i2p.i2ptunnel.ui.TunnelConfig;
 
+import java.util.Map;
+import java.util.TreeMap;
+
 public class TunnelUtil extends GeneralHelper {
     public static final String PREFERENCES_FILENAME_PREFIX = "tunnel.";
+    /**
+     * Hash of the tunnel's i2ptunnel.config entries when the preferences were last synced.
+     * @since 0.9.45
+     */
+    private static final String PREF_CONFIG_HASH = "i2pandroid.configHash";
+    /**
+     * Hash of the preferences themselves when last synced.
+     * @since 0.9.45
+     */
+    private static final String PREF_PREFS_HASH = "i2pandroid.prefsHash";
 
     public TunnelUtil(I2PAppContext context, TunnelControllerGroup tcg) {
         super(context, tcg);
@@ -101,16 +115,30 @@ public class TunnelUtil extends GeneralHelper {
         new TunnelUtil(tcg).writeTunnelToPreferences(ctx, tunnel);
     }
 
+    /**
+     * i2ptunnel.config is the only authoritative copy of a tunnel's settings;
+     * the preferences are a working copy for editing. They are rewritten only
+     * if the tunnel config has changed since they were last synced, or they
+     * were changed without being saved (e.g. the app died while editing).
+     */
     public void writeTunnelToPreferences(Context ctx, int tunnel) {
         Resources res = ctx.getResources();
 
-        if (getController(tunnel) == null)
+        TunnelController controller = getController(tunnel);
+        if (controller == null)
             throw new IllegalArgumentException("Cannot write non-existent tunnel to Preferences");
 
         // Get the current preferences for this tunnel
         SharedPreferences preferences = ctx.getSharedPreferences(
                 getPreferencesFilename(tunnel), Context.MODE_PRIVATE);
 
+        String configHash = hashConfig(controller);
+        if (configHash.equals(preferences.getString(PREF_CONFIG_HASH, null)) &&
+                hashPreferences(preferences).equals(preferences.getString(PREF_PREFS_HASH, null))) {
+            Util.d("Preferences for tunnel " + tunnel + " are up to date");
+            return;
+        }
+
         // Clear all previous values
         SharedPreferences.Editor ed = preferences.edit().clear();
 
@@ -121,6 +149,53 @@ public class TunnelUtil extends GeneralHelper {
         new TunnelToPreferences(ed, res, tunnel, type).runLogic();
 
         ed.apply();
+        markPreferencesSynced(preferences, configHash);
+    }
+
+    /**
+     * Call after the preferences have been saved to the tunnel config.
+     *
+     * @since 0.9.45
+     */
+    public static void markPreferencesSynced(Context ctx, TunnelControllerGroup tcg, int tunnel) {
+        TunnelController controller = getController(tcg, tunnel);
+        if (controller == null)
+            return;
+        SharedPreferences preferences = ctx.getSharedPreferences(
+                getPreferencesFilename(tunnel), Context.MODE_PRIVATE);
+        markPreferencesSynced(preferences, hashConfig(controller));
+    }
+
+    private static void markPreferencesSynced(SharedPreferences preferences, String configHash) {
+        preferences.edit()
+                .putString(PREF_CONFIG_HASH, configHash)
+                .putString(PREF_PREFS_HASH, hashPreferences(preferences))
+                .apply();
+    }
+
+    /**
+     * @return true if the config would not change the tunnel's current settings
+     * @since 0.9.45
+     */
+    public static boolean isUnchanged(TunnelControllerGroup tcg, int tunnel, TunnelConfig cfg) {
+        TunnelController controller = getController(tcg, tunnel);
+        return controller != null && cfg.getConfig().equals(controller.getConfig(""));
+    }
+
+    private static String hashConfig(TunnelController controller) {
+        return hash(new TreeMap<Object, Object>(controller.getConfig("")).toString());
+    }
+
+    private static String hashPreferences(SharedPreferences preferences) {
+        Map<String, Object> all = new TreeMap<String, Object>(preferences.getAll());
+        all.remove(PREF_CONFIG_HASH);
+        all.remove(PREF_PREFS_HASH);
+        return hash(all.toString());
+    }
+
+    private static String hash(String s) {
+        return I2PAppContext.getGlobalContext().sha()
+                .calculateHash(DataHelper.getUTF8(s)).toBase64();
     }
 
     class TunnelToPreferences extends TunnelLogic {
@@ -2,8 +2,10 @@ package net.i2p.android.preferences;
 
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
+import android.support.v7.preference.ListPreference;
 import android.support.v7.preference.Preference;
 
+import net.i2p.android.i2ptunnel.TunnelLifecycleManager;
 import net.i2p.android.router.R;
 import net.i2p.android.router.SettingsActivity;
 
@@ -25,6 +27,12 @@ public class AdvancedPreferenceFragment extends I2PreferenceFragment {
     public void onResume() {
         super.onResume();
         ((SettingsActivity) getActivity()).getSupportActionBar().setTitle(R.string.settings_label_advanced);
+
+        ListPreference profile = (ListPreference) findPreference(getString(R.string.PREF_TUNNEL_PROFILE));
+        int saved = TunnelLifecycleManager.getInstance().getBuildsSaved();
+        if (saved > 0)
+            profile.setSummary(getString(R.string.settings_summ_tunnel_profile,
+                    profile.getEntry(), saved));
     }
 
     private class CategoryClickListener implements Preference.OnPreferenceClickListener {
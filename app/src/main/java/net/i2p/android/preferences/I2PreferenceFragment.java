@@ -1,10 +1,13 @@
 package net.i2p.android.preferences;
 
+import android.content.SharedPreferences;
 import android.widget.Toast;
 
 import net.i2p.I2PAppContext;
 import net.i2p.android.preferences.util.CustomPreferenceFragment;
 import net.i2p.android.router.R;
+import net.i2p.android.router.util.LiveSettings;
+import net.i2p.android.router.util.RouterConfigStore;
 import net.i2p.android.router.util.Util;
 import net.i2p.router.RouterContext;
 
@@ -16,8 +19,32 @@ import java.util.Set;
  * A PreferenceFragment that handles saving router settings.
  */
 public abstract class I2PreferenceFragment extends CustomPreferenceFragment {
+    private boolean mChanged;
+
+    private final SharedPreferences.OnSharedPreferenceChangeListener mChangeListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+        public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+            mChanged = true;
+        }
+    };
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        getPreferenceManager().getSharedPreferences()
+                .registerOnSharedPreferenceChangeListener(mChangeListener);
+    }
+
     @Override
     public void onPause() {
+        getPreferenceManager().getSharedPreferences()
+                .unregisterOnSharedPreferenceChangeListener(mChangeListener);
+        if (!mChanged) {
+            super.onPause();
+            return;
+        }
+        mChanged = false;
+
         List<Properties> lProps = Util.getPropertiesFromPreferences(getActivity());
         Properties props = lProps.get(0);
         Properties propsToRemove = lProps.get(1);
@@ -27,22 +54,15 @@ public abstract class I2PreferenceFragment extends CustomPreferenceFragment {
 
         boolean restartRequired = Util.checkAndCorrectRouterConfig(getActivity(), props, toRemove);
 
-        // Apply new config if we are running.
-        RouterContext rCtx = Util.getRouterContext();
-        if (rCtx != null) {
-            rCtx.router().saveConfig(props, toRemove);
-
-            // Merge in new log settings
-            saveLoggingChanges(rCtx, logSettings);
-        } else {
-            // Merge in new config settings, write the file.
-            Util.mergeResourceToFile(getActivity(),
-                    Util.getFileDir(getActivity()),
-                    "router.config", R.raw.router_config, props, toRemove);
+        // Apply the changed keys to the running router or the file now,
+        // in case the process is killed once we are in the background.
+        RouterConfigStore store = RouterConfigStore.getInstance(getActivity());
+        store.apply(props, toRemove);
+        store.flush();
 
-            // Merge in new log settings
-            saveLoggingChanges(I2PAppContext.getGlobalContext(), logSettings);
-        }
+        // Merge in new log settings
+        RouterContext rCtx = Util.getRouterContext();
+        LiveSettings.applyLogging(rCtx != null ? rCtx : I2PAppContext.getGlobalContext(), logSettings);
 
         // Store the settings in Android
         super.onPause();
@@ -50,23 +70,4 @@ public abstract class I2PreferenceFragment extends CustomPreferenceFragment {
         if (restartRequired)
             Toast.makeText(getActivity(), R.string.settings_router_restart_required, Toast.LENGTH_LONG).show();
     }
-
-    private void saveLoggingChanges(I2PAppContext ctx, Properties logSettings) {
-        boolean shouldSave = false;
-
-        for (Object key : logSettings.keySet()) {
-            if ("logger.defaultLevel".equals(key)) {
-                String defaultLevel = (String) logSettings.get(key);
-                String oldDefault = ctx.logManager().getDefaultLimit();
-                if (!defaultLevel.equals(oldDefault)) {
-                    shouldSave = true;
-                    ctx.logManager().setDefaultLimit(defaultLevel);
-                }
-            }
-        }
-
-        if (shouldSave) {
-            ctx.logManager().saveConfig();
-        }
-    }
 }
@@ -1,9 +1,12 @@
 package net.i2p.android.preferences;
 
 import android.os.Bundle;
+import android.support.v7.preference.Preference;
 
 import net.i2p.android.router.R;
 import net.i2p.android.router.SettingsActivity;
+import net.i2p.android.router.util.PowerProfileManager;
+import net.i2p.data.DataHelper;
 
 public class NetworkPreferenceFragment extends I2PreferenceFragment {
     @Override
@@ -15,5 +18,16 @@ public class NetworkPreferenceFragment extends I2PreferenceFragment {
     public void onResume() {
         super.onResume();
         ((SettingsActivity) getActivity()).getSupportActionBar().setTitle(R.string.settings_label_bandwidth_net);
+
+        PowerProfileManager power = PowerProfileManager.getInstance();
+        long time = power.getLowPowerTime();
+        if (time > 0) {
+            Preference pref = findPreference(getString(R.string.PREF_POWER_SAVING));
+            pref.setSummary(getString(R.string.settings_summ_power_saving,
+                    getString(R.string.settings_desc_power_saving),
+                    DataHelper.formatDuration2(time),
+                    DataHelper.formatSize(power.getBytesSaved()) + 'B',
+                    power.getUpdatesSkipped()));
+        }
     }
 }
@@ -19,6 +19,7 @@ import net.i2p.android.router.log.LogActivity;
 import net.i2p.android.router.netdb.NetDbActivity;
 import net.i2p.android.router.stats.PeersActivity;
 import net.i2p.android.router.stats.RateGraphActivity;
+import net.i2p.android.router.stats.StartupTimelineActivity;
 import net.i2p.android.router.util.Util;
 
 public class ConsoleContainer extends Fragment {
@@ -122,6 +123,11 @@ public class ConsoleContainer extends Fragment {
                 dialog.show(getFragmentManager(), "about");
                 return true;
 
+            case R.id.menu_startup_timeline:
+                Intent timeline = new Intent(getActivity(), StartupTimelineActivity.class);
+                startActivity(timeline);
+                return true;
+
             case R.id.menu_help_release_notes:
                 TextResourceDialog rDdialog = new TextResourceDialog();
                 Bundle args = new Bundle();
@@ -33,10 +33,13 @@ import net.i2p.android.I2PActivityBase;
 import net.i2p.android.help.BrowserConfigActivity;
 import net.i2p.android.router.dialog.FirstStartDialog;
 import net.i2p.android.router.service.RouterService;
+import net.i2p.android.router.service.SSDPLocker;
 import net.i2p.android.router.service.State;
 import net.i2p.android.router.util.Connectivity;
 import net.i2p.android.router.util.LongToggleButton;
 import net.i2p.android.router.util.Util;
+import net.i2p.android.util.AppScheduler;
+import net.i2p.android.util.MemoryGovernor;
 import net.i2p.data.DataHelper;
 import net.i2p.data.Destination;
 import net.i2p.data.Hash;
@@ -49,11 +52,12 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 
 public class MainFragment extends I2PFragmentBase {
 
     private Handler _handler;
-    private Runnable _updater;
+    private AppScheduler.Task _updater;
     private Runnable _oneShotUpdate;
     private String _savedStatus;
 
@@ -137,7 +141,6 @@ public class MainFragment extends I2PFragmentBase {
         }
 
         _handler = new Handler();
-        _updater = new Updater();
         _oneShotUpdate = new OneShotUpdate();
     }
 
@@ -204,14 +207,16 @@ public class MainFragment extends I2PFragmentBase {
     @Override
     public void onStart() {
         super.onStart();
-        _handler.removeCallbacks(_updater);
         _handler.removeCallbacks(_oneShotUpdate);
         if (_savedStatus != null) {
             TextView tv = (TextView) getActivity().findViewById(R.id.console_advanced_status_text);
             tv.setText(_savedStatus);
         }
         checkDialog();
-        _handler.postDelayed(_updater, 100);
+        if (_updater != null)
+            _updater.cancel();
+        _updater = AppScheduler.getInstance().schedule(new Updater(), 100, Updater.DELAY,
+                AppScheduler.FLAG_MAIN_THREAD | AppScheduler.FLAG_UI_ONLY);
 
         LocalBroadcastManager lbm = LocalBroadcastManager.getInstance(getActivity());
 
@@ -242,7 +247,10 @@ public class MainFragment extends I2PFragmentBase {
     @Override
     public void onStop() {
         super.onStop();
-        _handler.removeCallbacks(_updater);
+        if (_updater != null) {
+            _updater.cancel();
+            _updater = null;
+        }
         _handler.removeCallbacks(_oneShotUpdate);
 
         LocalBroadcastManager.getInstance(getActivity()).unregisterReceiver(onStateChange);
@@ -282,9 +290,10 @@ public class MainFragment extends I2PFragmentBase {
 
     private class Updater implements Runnable {
 
+        static final int DELAY = 1000;
+
         private int counter;
-        private final int delay = 1000;
-        private final int toloop = delay / 500;
+        private final int toloop = 2;
 
         public void run() {
             updateVisibility();
@@ -296,11 +305,21 @@ public class MainFragment extends I2PFragmentBase {
                     Util.w("Status was updated before RouterContext was ready", npe);
                 }
             }
-            //_handler.postDelayed(this, 2500);
-            _handler.postDelayed(this, delay);
         }
     }
 
+    /**
+     *  @since 0.9.45
+     */
+    private static String getCacheFootprint() {
+        StringBuilder buf = new StringBuilder();
+        for (Map.Entry<String, Long> e : MemoryGovernor.getInstance().getFootprint().entrySet()) {
+            buf.append("\n  ").append(e.getKey()).append(": ")
+               .append(DataHelper.formatSize(e.getValue())).append('B');
+        }
+        return buf.toString();
+    }
+
     private void updateVisibility() {
         boolean showOnOff = mCallback.shouldShowOnOff();
         mOnOffButton.setVisibility(showOnOff ? View.VISIBLE : View.GONE);
@@ -416,6 +435,9 @@ public class MainFragment extends I2PFragmentBase {
                 String details =
                         "\nMemory: " + DataHelper.formatSize(Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory())
                                 + "B / " + DataHelper.formatSize(Runtime.getRuntime().maxMemory()) + 'B'
+                                + getCacheFootprint()
+                                + "\nMulticast lock today: " + DataHelper.formatDuration(
+                                        SSDPLocker.getInstance(getActivity()).getLockTimeToday())
                                 + "\nJob Lag: " + jobLag
                                 + "\nMsg Delay: " + msgDelay;
 
@@ -32,6 +32,7 @@ import net.i2p.android.router.service.State;
 import net.i2p.android.router.util.Util;
 import net.i2p.android.util.AlphanumericHeaderAdapter;
 import net.i2p.android.util.FragmentUtils;
+import net.i2p.android.util.MemoryGovernor;
 import net.i2p.android.widget.DividerItemDecoration;
 import net.i2p.android.widget.LoadingRecyclerView;
 import net.i2p.router.RouterContext;
@@ -57,6 +58,9 @@ public class AddressbookFragment extends Fragment implements
 
     private ImageButton mAddToAddressbook;
 
+    /** rough size of an entry with its Destination */
+    private static final int ENTRY_SIZE = 512;
+
     // Container Activity must implement this interface
     public interface OnAddressSelectedListener {
         void onAddressSelected(CharSequence host);
@@ -86,8 +90,30 @@ public class AddressbookFragment extends Fragment implements
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setHasOptionsMenu(true);
+        MemoryGovernor.getInstance().register("Addressbooks", MemoryGovernor.PRIORITY_UI, mTrimmer);
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        MemoryGovernor.getInstance().unregister(mTrimmer);
+    }
+
+    private final MemoryGovernor.Cache mTrimmer = new MemoryGovernor.Cache() {
+        public long getSize() {
+            return mAdapter != null ? (long) mAdapter.getItemCount() * ENTRY_SIZE : 0;
+        }
+
+        public void trim(boolean all) {
+            if (isResumed() || mAdapter == null)
+                return;
+            getLoaderManager().destroyLoader(PRIVATE_BOOK.equals(mBook) ?
+                    PRIVATE_LOADER_ID : ROUTER_LOADER_ID);
+            // so the state request in onResume() starts the loader again
+            lastRouterState = null;
+        }
+    };
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         View v = inflater.inflate(R.layout.fragment_list_with_add, container, false);
@@ -17,6 +17,7 @@ import android.widget.Toast;
 
 import net.i2p.I2PAppContext;
 import net.i2p.android.router.R;
+import net.i2p.android.util.MemoryGovernor;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -46,6 +47,8 @@ public class LogFragment extends ListFragment implements
     private boolean mActivateOnItemClick = false;
 
     private MenuItem mCopyLogs;
+    /** the entries were shed while hidden, reload when shown */
+    private boolean mTrimmed;
 
     // Container Activity must implement this interface
     public interface OnEntrySelectedListener {
@@ -79,8 +82,53 @@ public class LogFragment extends ListFragment implements
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setHasOptionsMenu(true);
+        MemoryGovernor.getInstance().register("Logs", MemoryGovernor.PRIORITY_UI, mTrimmer);
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+        if (mTrimmed) {
+            mTrimmed = false;
+            setListShown(false);
+            getLoaderManager().initLoader(getLoaderId(), null, this);
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        MemoryGovernor.getInstance().unregister(mTrimmer);
+    }
+
+    private int getLoaderId() {
+        return LOG_LEVEL_ERROR.equals(mLogLevel) ? LEVEL_ERROR : LEVEL_ALL;
+    }
+
+    private final MemoryGovernor.Cache mTrimmer = new MemoryGovernor.Cache() {
+        public long getSize() {
+            long rv = 0;
+            synchronized (mLogEntries) {
+                for (String entry : mLogEntries) {
+                    // the strings are shared with the adapter and loader
+                    rv += 40 + 2 * entry.length();
+                }
+            }
+            return rv;
+        }
+
+        public void trim(boolean all) {
+            if (isResumed() || mAdapter == null || mTrimmed)
+                return;
+            getLoaderManager().destroyLoader(getLoaderId());
+            synchronized (mLogEntries) {
+                mLogEntries.clear();
+            }
+            mAdapter.setData(null);
+            mTrimmed = true;
+        }
+    };
+
     @Override
     public void onViewCreated(View view, Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
@@ -13,6 +13,7 @@ import android.widget.ListView;
 
 import net.i2p.android.router.R;
 import net.i2p.android.router.util.Util;
+import net.i2p.android.util.MemoryGovernor;
 import net.i2p.data.Hash;
 
 import java.util.List;
@@ -37,6 +38,10 @@ public class NetDbListFragment extends ListFragment implements
      */
     private int mActivatedPosition = ListView.INVALID_POSITION;
     private boolean mActivateOnItemClick = false;
+    /** the entries were shed while hidden, reload when shown */
+    private boolean mTrimmed;
+    /** rough size of an entry, the RouterInfo or LeaseSet is the NetDb's */
+    private static final int ENTRY_SIZE = 96;
 
     // Container Activity must implement this interface
     public interface OnEntrySelectedListener {
@@ -62,8 +67,43 @@ public class NetDbListFragment extends ListFragment implements
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setHasOptionsMenu(true);
+        MemoryGovernor.getInstance().register("NetDb lists", MemoryGovernor.PRIORITY_UI, mTrimmer);
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+        if (mTrimmed) {
+            mTrimmed = false;
+            if (Util.getRouterContext() != null) {
+                setListShown(false);
+                getLoaderManager().initLoader(mRouters ? ROUTER_LOADER_ID
+                        : LEASESET_LOADER_ID, null, this);
+            }
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        MemoryGovernor.getInstance().unregister(mTrimmer);
+    }
+
+    private final MemoryGovernor.Cache mTrimmer = new MemoryGovernor.Cache() {
+        public long getSize() {
+            return mAdapter != null ? (long) mAdapter.getCount() * ENTRY_SIZE : 0;
+        }
+
+        public void trim(boolean all) {
+            if (isResumed() || mAdapter == null || mTrimmed)
+                return;
+            getLoaderManager().destroyLoader(mRouters ? ROUTER_LOADER_ID
+                    : LEASESET_LOADER_ID);
+            mAdapter.setData(null);
+            mTrimmed = true;
+        }
+    };
+
     @Override
     public void onViewCreated(View view, Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
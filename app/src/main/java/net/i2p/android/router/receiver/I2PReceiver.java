@@ -65,16 +65,19 @@ public class I2PReceiver extends BroadcastReceiver {
                     RouterService svc = _routerService;
                     if (_isBound && svc != null) {
                         Util.w("********* Network down, already bound");
-                        svc.networkStop();
+                        svc.networkPause();
                     } else {
                         Util.w("********* Network down, binding to router");
-                        // connection will call networkStop()
+                        // connection will call networkPause()
                         bindRouter();
                     }
                 }
             } else {
                 _wasConnected = connected;
                 _unconnectedCount = 0;
+                RouterService svc = _routerService;
+                if (connected && _isBound && svc != null)
+                    svc.networkResume();
             }
         }
     }
@@ -117,15 +120,15 @@ public class I2PReceiver extends BroadcastReceiver {
 
     private class RouterConnection implements ServiceConnection {
 
-        /** Stops the router when connected */
+        /** Pauses the router when connected */
         public void onServiceConnected(ComponentName name, IBinder service) {
             RouterBinder binder = (RouterBinder) service;
             _routerService = binder.getService();
             _isBound = true;
             _unconnectedCount = 0;
             _wasConnected = false;
-            Util.w("********* Network down, stopping router");
-            _routerService.networkStop();
+            Util.w("********* Network down, pausing router");
+            _routerService.networkPause();
             // this doesn't work here... TODO where to unbind
             //_context.unbindService(this);
         }
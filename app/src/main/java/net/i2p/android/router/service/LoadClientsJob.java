@@ -6,16 +6,22 @@ import android.content.Context;
 import net.i2p.I2PAppContext;
 import net.i2p.addressbook.DaemonThread;
 import net.i2p.android.apps.NewsFetcher;
+import net.i2p.android.i2ptunnel.TunnelLifecycleManager;
+import net.i2p.android.i2ptunnel.TunnelMetricsCollector;
+import net.i2p.android.router.stats.PeerTelemetry;
 import net.i2p.android.router.util.Notifications;
 import net.i2p.android.router.util.Util;
 import net.i2p.i2ptunnel.TunnelControllerGroup;
-import net.i2p.router.Job;
 import net.i2p.router.JobImpl;
 import net.i2p.router.RouterContext;
 import net.i2p.router.startup.RouterAppManager;
 import net.i2p.util.I2PAppThread;
 
 import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Load the clients we want.
@@ -40,29 +46,37 @@ class LoadClientsJob extends JobImpl {
 
     private final Context mCtx;
     private final Notifications _notif;
+    private final ScheduledExecutorService _executor;
     private DaemonThread _addressbook;
     //private BOB _bob;
 
-    /** this is the delay to load (and start) the clients. */
-    private static final long LOAD_DELAY = 60*1000;
+    /** how often to check whether the router has finished starting */
+    private static final long RUNNING_CHECK_INTERVAL = 250;
 
 
     public LoadClientsJob(Context ctx, RouterContext rCtx, Notifications notif) {
         super(rCtx);
         mCtx = ctx;
         _notif = notif;
-        getTiming().setStartAfter(getContext().clock().now() + LOAD_DELAY);
+        _executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new I2PAppThread(r, "ClientStartup", true);
+                t.setPriority(Thread.NORM_PRIORITY - 1);
+                return t;
+            }
+        });
     }
 
     public String getName() { return "Start Clients"; }
 
+    /**
+     *  Hands the client startup stages to our own thread, each stage
+     *  starting as soon as the one it depends on has finished:
+     *  router running, then i2ptunnel, then the news fetcher and addressbook.
+     */
     public void runJob() {
-        Job j = new RunI2PTunnel(getContext());
-        getContext().jobQueue().addJob(j);
-
-        Thread t = new I2PAppThread(new StatSummarizer(), "StatSummarizer", true);
-        t.setPriority(Thread.NORM_PRIORITY - 1);
-        t.start();
+        new StatSummarizer().start();
+        PeerTelemetry.getInstance().start();
 
         // add other clients here
         //_bob = new BOB(I2PAppContext.getGlobalContext(), null, new String[0]);
@@ -71,50 +85,72 @@ class LoadClientsJob extends JobImpl {
         //} catch (IOException ioe) {}
 
         getContext().addShutdownTask(new ClientShutdownHook());
+        _executor.execute(new WaitForRouter());
     }
 
-    private class RunI2PTunnel extends JobImpl {
-
-        public RunI2PTunnel(RouterContext ctx) {
-            super(ctx);
+    /**
+     *  Reschedules itself instead of sleeping until the router is running.
+     */
+    private class WaitForRouter implements Runnable {
+        public void run() {
+            if (!getContext().router().isAlive()) {
+                Util.e("Router stopped before i2ptunnel could start");
+                _executor.shutdown();
+                return;
+            }
+            if (getContext().router().isRunning()) {
+                StartupTimeline.getInstance(mCtx).mark(StartupTimeline.PHASE_ROUTER_RUNNING);
+                _executor.execute(new StartI2PTunnel());
+            } else {
+                _executor.schedule(this, RUNNING_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+            }
         }
+    }
 
-        public String getName() { return "Start I2P Tunnel"; }
-
-        public void runJob() {
-            while (!getContext().router().isRunning()) {
-                try { Thread.sleep(1000); } catch (InterruptedException ie) { return; }
-                if (!getContext().router().isAlive()) {
-                    Util.e("Router stopped before i2ptunnel could start");
-                    return;
-                }
-            }
+    private class StartI2PTunnel implements Runnable {
+        public void run() {
             Util.d("Starting i2ptunnel");
             TunnelControllerGroup tcg = TunnelControllerGroup.getInstance(getContext());
             try {
                 tcg.startup();
                 int sz = tcg.getControllers().size();
                 Util.d("i2ptunnel started " + sz + " clients");
-
-                // no use starting these until i2ptunnel starts
-                RouterContext ctx = getContext();
-                NewsFetcher fetcher = NewsFetcher.getInstance(mCtx, getContext(), _notif);
-                ctx.routerAppManager().addAndStart(fetcher, new String[0]);
-
-                _addressbook = new DaemonThread(new String[] {"addressbook"});
-                _addressbook.setName("Addressbook");
-                _addressbook.setDaemon(true);
-                _addressbook.start();
+                StartupTimeline.getInstance(mCtx).mark(StartupTimeline.PHASE_I2PTUNNEL_STARTED);
+                TunnelLifecycleManager.getInstance().start(mCtx);
+                TunnelMetricsCollector.getInstance().start();
             } catch (IllegalArgumentException iae) {
                 Util.e("i2ptunnel failed to start", iae);
+                _executor.shutdown();
+                return;
             }
+            // no use starting these until i2ptunnel starts
+            _executor.execute(new StartNewsFetcher());
+            _executor.execute(new StartAddressbook());
+            _executor.shutdown();
+        }
+    }
 
+    private class StartNewsFetcher implements Runnable {
+        public void run() {
+            RouterContext ctx = getContext();
+            NewsFetcher fetcher = NewsFetcher.getInstance(mCtx, ctx, _notif);
+            ctx.routerAppManager().addAndStart(fetcher, new String[0]);
+        }
+    }
+
+    private class StartAddressbook implements Runnable {
+        public void run() {
+            _addressbook = new DaemonThread(new String[] {"addressbook"});
+            _addressbook.setName("Addressbook");
+            _addressbook.setDaemon(true);
+            _addressbook.start();
         }
     }
 
     private class ClientShutdownHook implements Runnable {
         public void run() {
             Util.d("client shutdown hook");
+            _executor.shutdownNow();
             // i2ptunnel registers its own hook
             // StatSummarizer registers its own hook
             // NewsFetcher registers its own hook
@@ -122,6 +158,9 @@ class LoadClientsJob extends JobImpl {
             //    _bob.shutdown(null);
             if (_addressbook != null)
                 _addressbook.halt();
+            TunnelLifecycleManager.getInstance().stop();
+            TunnelMetricsCollector.getInstance().stop();
+            PeerTelemetry.getInstance().stop();
         }
     }
 }
@@ -0,0 +1,131 @@
+package net.i2p.android.router.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import net.i2p.android.router.R;
+import net.i2p.android.router.util.Util;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ *  Removes stale RouterInfo files from the NetDb directory before the
+ *  router starts, so it does not spend startup reading and parsing
+ *  thousands of small files only to expire them.
+ *  <p/>
+ *  Phones are often offline for days, and most RouterInfos saved that
+ *  long ago are for routers that have since changed or gone. The newest
+ *  MIN_KEEP files are always kept so the router can bootstrap without
+ *  a reseed.
+ *  <p/>
+ *  Listing and stat'ing the directory costs more than it saves when there
+ *  is little to delete, so it is done at most once every PRUNE_INTERVAL,
+ *  and a normal start pays nothing.
+ *  <p/>
+ *  This only makes the NetDb smaller. The router still reads and writes
+ *  one file per RouterInfo, since its data store cannot be replaced from
+ *  the app, so the startup enumeration and the per-store latency are
+ *  unchanged for the files that are kept.
+ *
+ *  @since 0.9.45
+ */
+class NetDbPruner {
+    private static final String DB_DIR = "netDb";
+    private static final String RI_PREFIX = "routerInfo-";
+    private static final String RI_SUFFIX = ".dat";
+    private static final long MAX_AGE = 3*24*60*60*1000L;
+    private static final int MIN_KEEP = 300;
+    private static final long PRUNE_INTERVAL = 24*60*60*1000L;
+
+    private NetDbPruner() {}
+
+    /**
+     *  Must be called before the router is created.
+     *
+     *  @param routerDir the router's config dir
+     *  @return the number of files deleted
+     */
+    static int prune(Context ctx, File routerDir) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(ctx);
+        String key = ctx.getString(R.string.PREF_NETDB_LAST_PRUNE);
+        long now = System.currentTimeMillis();
+        long last = prefs.getLong(key, 0);
+        // Also prune if the clock went backwards
+        if (last <= now && now - last < PRUNE_INTERVAL)
+            return 0;
+        prefs.edit().putLong(key, now).apply();
+        return prune(routerDir, now);
+    }
+
+    /**
+     *  Where the router keeps the RouterInfo for a peer.
+     *
+     *  @param b64 the peer's hash in Base64
+     */
+    static File routerInfoFile(File routerDir, String b64) {
+        File dir = new File(new File(routerDir, DB_DIR), "r" + b64.charAt(0));
+        return new File(dir, RI_PREFIX + b64 + RI_SUFFIX);
+    }
+
+    private static int prune(File routerDir, long now) {
+        File dbDir = new File(routerDir, DB_DIR);
+        File[] subdirs = dbDir.listFiles(new FileFilter() {
+            public boolean accept(File f) {
+                return f.isDirectory() && f.getName().startsWith("r");
+            }
+        });
+        if (subdirs == null)
+            return 0;
+
+        FileFilter riFilter = new FileFilter() {
+            public boolean accept(File f) {
+                String name = f.getName();
+                return name.startsWith(RI_PREFIX) && name.endsWith(RI_SUFFIX);
+            }
+        };
+        final List<File> files = new ArrayList<>();
+        File[] top = dbDir.listFiles(riFilter);
+        if (top != null)
+            files.addAll(Arrays.asList(top));
+        for (File dir : subdirs) {
+            File[] ris = dir.listFiles(riFilter);
+            if (ris != null)
+                files.addAll(Arrays.asList(ris));
+        }
+        if (files.size() <= MIN_KEEP)
+            return 0;
+
+        final long[] modified = new long[files.size()];
+        for (int i = 0; i < modified.length; i++) {
+            modified[i] = files.get(i).lastModified();
+        }
+        Integer[] order = new Integer[modified.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // newest first
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer l, Integer r) {
+                long lm = modified[l];
+                long rm = modified[r];
+                return lm > rm ? -1 : (lm < rm ? 1 : 0);
+            }
+        });
+
+        long cutoff = now - MAX_AGE;
+        int deleted = 0;
+        for (int i = MIN_KEEP; i < order.length; i++) {
+            int idx = order[i];
+            if (modified[idx] < cutoff && files.get(idx).delete())
+                deleted++;
+        }
+        Util.d("Pruned " + deleted + " of " + files.size() + " NetDb RouterInfo files");
+        return deleted;
+    }
+}
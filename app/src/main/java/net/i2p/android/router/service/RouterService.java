@@ -16,15 +16,26 @@ import android.support.v4.content.LocalBroadcastManager;
 import net.i2p.android.router.R;
 import net.i2p.android.router.receiver.I2PReceiver;
 import net.i2p.android.router.util.Connectivity;
+import net.i2p.android.router.util.NetworkProfileManager;
+import net.i2p.android.router.util.PowerProfileManager;
 import net.i2p.android.router.util.Notifications;
+import net.i2p.android.router.util.RouterConfigStore;
 import net.i2p.android.router.util.Util;
+import net.i2p.android.util.AppScheduler;
 import net.i2p.android.util.LocaleManager;
+import net.i2p.android.util.MemoryGovernor;
 import net.i2p.data.DataHelper;
 import net.i2p.router.Job;
 import net.i2p.router.Router;
 import net.i2p.router.RouterContext;
+import net.i2p.router.transport.Transport;
+import net.i2p.util.I2PAppThread;
 
+import java.io.File;
 import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
 
 /**
  * Runs the router
@@ -64,7 +75,15 @@ public class RouterService extends Service {
     private IBinder _binder;
     private final Object _stateLock = new Object();
     private Handler _handler;
-    private Runnable _updater;
+    private AppScheduler.Task _updater;
+    private volatile boolean _networkPaused;
+    /** Held while stopping or starting the transports for a pause */
+    private final Object _transportLock = new Object();
+    /** The transports of the running router were stopped by a pause */
+    private boolean _transportsStopped;
+    /** How long to stay paused before stopping the router */
+    private static final long NETWORK_PAUSE_TIMEOUT = 15 * 60 * 1000;
+    private static final long STATUS_UPDATE_INTERVAL = 15 * 1000;
     private static final String SHARED_PREFS = "net.i2p.android.router";
     private static final String LAST_STATE = "service.lastState";
     private static final String EXTRA_RESTART = "restart";
@@ -98,7 +117,7 @@ public class RouterService extends Service {
         _notif = new Notifications(this);
         _binder = new RouterBinder(this);
         _handler = new Handler();
-        _updater = new Updater();
+        MemoryGovernor.getInstance().attach(this);
         LocalBroadcastManager lbm = LocalBroadcastManager.getInstance(this);
         lbm.registerReceiver(onStateRequested, new IntentFilter(LOCAL_BROADCAST_REQUEST_STATE));
         lbm.registerReceiver(onLocaleChanged, new IntentFilter(LOCAL_BROADCAST_LOCALE_CHANGED));
@@ -158,6 +177,7 @@ public class RouterService extends Service {
                     _statusBar.replace(StatusBar.ICON_STARTING, R.string.notification_status_starting);
                 }
                 setState(State.STARTING);
+                StartupTimeline.getInstance(this).begin();
                 _starterThread = new Thread(new Starter());
                 _starterThread.start();
             } else {
@@ -166,8 +186,10 @@ public class RouterService extends Service {
                 _handler.postDelayed(new Waiter(), 10 * 1000);
             }
         }
-        _handler.removeCallbacks(_updater);
-        _handler.postDelayed(_updater, 50);
+        if (_updater != null)
+            _updater.cancel();
+        _updater = AppScheduler.getInstance().schedule(new Updater(), 50, STATUS_UPDATE_INTERVAL,
+                AppScheduler.FLAG_MAIN_THREAD);
         if(!restart) {
             startForeground(1337, _statusBar.getNote());
         }
@@ -192,6 +214,7 @@ public class RouterService extends Service {
                         }
                         _statusBar.replace(StatusBar.ICON_STARTING, R.string.notification_status_starting_after_waiting);
                         setState(State.STARTING);
+                        StartupTimeline.getInstance(RouterService.this).begin();
                         _starterThread = new Thread(new Starter());
                         _starterThread.start();
                     }
@@ -207,15 +230,35 @@ public class RouterService extends Service {
         public void run() {
             Util.d(MARKER + this + " starter thread"
                     + " Current state is: " + _state);
+            StartupTimeline timeline = StartupTimeline.getInstance(RouterService.this);
+            timeline.mark(StartupTimeline.PHASE_STARTER);
             //Util.d(MARKER + this + " JBigI speed test started");
             //NativeBigInteger.main(null);
             //Util.d(MARKER + this + " JBigI speed test finished, launching router");
 
+            // Make sure router.config has the current settings, even if the
+            // app was killed before a settings change reached it
+            List<Properties> lProps = Util.getPropertiesFromPreferences(RouterService.this);
+            Properties props = lProps.get(0);
+            Collection toRemove = lProps.get(1).keySet();
+            Util.checkAndCorrectRouterConfig(RouterService.this, props, toRemove);
+            RouterConfigStore store = RouterConfigStore.getInstance(RouterService.this);
+            store.apply(props, toRemove);
+            store.flush();
+            // Don't make the router read RouterInfos it will only expire,
+            // at most once a day
+            File routerDir = new File(Util.getFileDir(RouterService.this));
+            NetDbPruner.prune(RouterService.this, routerDir);
+            // Bring back the peers that built our tunnels last time, if pruned
+            WarmStartSnapshot.restore(routerDir);
+
             // Launch the router!
             // TODO Store this somewhere instead of relying on global context?
             Router r = new Router();
-            r.setUPnPScannerCallback(new SSDPLocker(RouterService.this));
+            timeline.mark(StartupTimeline.PHASE_ROUTER_CREATED);
+            r.setUPnPScannerCallback(SSDPLocker.getInstance(RouterService.this));
             r.runRouter();
+            timeline.mark(StartupTimeline.PHASE_ROUTER_STARTED);
             synchronized(_stateLock) {
                 if(_state != State.STARTING) {
                     return;
@@ -227,27 +270,54 @@ public class RouterService extends Service {
                     throw new IllegalStateException("Router has no context?");
                 }
                 _context.router().setKillVMOnEnd(false);
+                synchronized(_transportLock) {
+                    _transportsStopped = false;
+                }
                 Job loadJob = new LoadClientsJob(RouterService.this, _context, _notif);
                 _context.jobQueue().addJob(loadJob);
                 _context.addShutdownTask(new ShutdownHook());
                 _context.addFinalShutdownTask(new FinalShutdownHook());
+                _handler.post(new Runnable() {
+                    public void run() {
+                        NetworkProfileManager.getInstance().start(RouterService.this);
+                        PowerProfileManager.getInstance().addListener(_powerListener);
+                        PowerProfileManager.getInstance().start(RouterService.this);
+                    }
+                });
                 _starterThread = null;
             }
             Util.d("Router.main finished");
         }
     }
 
+    /**
+     *  Nobody looks at the notification while the device is idle
+     */
+    private final PowerProfileManager.Listener _powerListener = new PowerProfileManager.Listener() {
+        public void onLowPowerChanged(boolean lowPower) {
+            AppScheduler.Task updater = _updater;
+            if (updater == null)
+                return;
+            if (lowPower) {
+                updater.setPeriod(PowerProfileManager.IDLE_UPDATE_INTERVAL);
+            } else {
+                updater.setPeriod(STATUS_UPDATE_INTERVAL);
+                updater.runNow();
+            }
+        }
+    };
+
     private class Updater implements Runnable {
 
         public void run() {
             RouterContext ctx = _context;
-            if(ctx != null && (_state == State.RUNNING || _state == State.ACTIVE || _state == State.GRACEFUL_SHUTDOWN)) {
+            if(ctx != null && !_networkPaused
+                    && (_state == State.RUNNING || _state == State.ACTIVE || _state == State.GRACEFUL_SHUTDOWN)) {
                 Router router = ctx.router();
                 if(router.isAlive()) {
                     updateStatus(ctx);
                 }
             }
-            _handler.postDelayed(this, 15 * 1000);
         }
     }
     private String _currTitle;
@@ -288,6 +358,7 @@ public class RouterService extends Service {
             }
         } else if (haveTunnels != _hadTunnels) {
             if(haveTunnels) {
+                StartupTimeline.getInstance(this).mark(StartupTimeline.PHASE_CLIENT_TUNNELS);
                 _currTitle = getString(R.string.notification_status_client_ready);
                 setState(State.ACTIVE);
                 _statusBar.replace(StatusBar.ICON_ACTIVE, _currTitle);
@@ -460,6 +531,102 @@ public class RouterService extends Service {
         }
     }
 
+    /**
+     * Stop the transports but keep the router, NetDb, profiles and tunnels in
+     * memory while the network is down, and stop it only if the network stays
+     * down. Tunnel builds and peer tests still run and fail while paused.
+     * If the router is not up yet, this is the same as networkStop().
+     *
+     * @since 0.9.45
+     */
+    public void networkPause() {
+        synchronized(_stateLock) {
+            if(_state != State.RUNNING && _state != State.ACTIVE) {
+                networkStop();
+                return;
+            }
+            if(_networkPaused) {
+                return;
+            }
+            Util.d("networkPause called"
+                    + " Current state is: " + _state);
+            _networkPaused = true;
+            _statusBar.replace(StatusBar.ICON_WAITING_NETWORK, R.string.notification_status_paused);
+            _handler.postDelayed(_pauseTimeout, NETWORK_PAUSE_TIMEOUT);
+            setListening(_context, false);
+        }
+    }
+
+    /**
+     * Network is back after networkPause(). Start the transports again so they
+     * bind to the new interface and addresses; the tunnel pools test their
+     * existing tunnels and replace any that broke.
+     *
+     * @since 0.9.45
+     */
+    public void networkResume() {
+        synchronized(_stateLock) {
+            if(!_networkPaused) {
+                return;
+            }
+            Util.d("networkResume called"
+                    + " Current state is: " + _state);
+            _networkPaused = false;
+            _handler.removeCallbacks(_pauseTimeout);
+            final RouterContext ctx = _context;
+            if(ctx == null || !ctx.router().isAlive()) {
+                return;
+            }
+            _currTitle = getString(R.string.notification_status_resumed);
+            _statusBar.replace(_state == State.ACTIVE ? StatusBar.ICON_ACTIVE : StatusBar.ICON_RUNNING,
+                    _currTitle);
+            setListening(ctx, true);
+        }
+    }
+
+    /**
+     * Stop or start all transports to match the pause, off the calling thread
+     * since it may block on sockets.
+     *
+     * @since 0.9.45
+     */
+    private void setListening(final RouterContext ctx, boolean listen) {
+        if(ctx == null)
+            return;
+        Thread t = new I2PAppThread(new Runnable() {
+            public void run() {
+                synchronized(_transportLock) {
+                    // The pause may have changed again since this was started
+                    boolean stop = _networkPaused;
+                    if(stop == _transportsStopped || !ctx.router().isAlive())
+                        return;
+                    for(Transport transport : ctx.commSystem().getTransports().values()) {
+                        if(stop)
+                            transport.stopListening();
+                        else
+                            transport.startListening();
+                    }
+                    _transportsStopped = stop;
+                    Util.d("Transports " + (stop ? "stopped for" : "started after") + " network pause");
+                }
+            }
+        }, listen ? "NetworkResume" : "NetworkPause", true);
+        t.start();
+    }
+
+    private final Runnable _pauseTimeout = new Runnable() {
+        public void run() {
+            synchronized(_stateLock) {
+                if(!_networkPaused) {
+                    return;
+                }
+                _networkPaused = false;
+            }
+            Util.w("Network still down after pause, stopping router");
+            networkStop();
+        }
+    };
+
     public boolean canManualStart() {
         // We can be in INIT if we restarted after crash but previous state was not RUNNING.
         return _state == State.INIT || _state == State.MANUAL_STOPPED || _state == State.STOPPED;
@@ -614,7 +781,10 @@ public class RouterService extends Service {
         Util.d("onDestroy called"
                 + " Current state is: " + _state);
 
-        _handler.removeCallbacks(_updater);
+        if (_updater != null) {
+            _updater.cancel();
+            _updater = null;
+        }
         _statusBar.remove();
 
         LocalBroadcastManager.getInstance(this).unregisterReceiver(onStateRequested);
@@ -695,6 +865,18 @@ public class RouterService extends Service {
             Util.d(this + " shutdown hook"
                     + " Current state is: " + _state);
             _statusBar.replace(StatusBar.ICON_SHUTTING_DOWN, R.string.notification_status_shutting_down);
+            NetworkProfileManager.getInstance().stop();
+            PowerProfileManager.getInstance().stop();
+            PowerProfileManager.getInstance().removeListener(_powerListener);
+            SSDPLocker.getInstance(RouterService.this).release();
+            RouterContext ctx = _context;
+            if(ctx != null) {
+                // Too late in FinalShutdownHook, the NetDb and profiles are gone by then
+                WarmStartSnapshot.save(ctx);
+            }
+            StartupTimeline.getInstance(RouterService.this).end();
+            _networkPaused = false;
+            _handler.removeCallbacks(_pauseTimeout);
             I2PReceiver rcvr = _receiver;
             if(rcvr != null) {
                 synchronized(rcvr) {
@@ -1,33 +1,390 @@
 package net.i2p.android.router.service;
 
 import android.content.Context;
+import android.net.DhcpInfo;
+import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiManager;
 import android.net.wifi.WifiManager.MulticastLock;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 
+import net.i2p.android.router.util.Util;
+import net.i2p.router.CommSystemFacade;
+import net.i2p.router.RouterContext;
 import net.i2p.router.transport.UPnPScannerCallback;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
 /**
  *  To lock/unlock UPnP, so it works on some phones.
  *  Many many phones don't require this, but do be safe...
+ *  <p/>
+ *  The multicast lock keeps the Wi-Fi radio awake for every multicast
+ *  packet on the network, so it is held as little as possible. The router
+ *  decides when to scan and can't be told to skip one, so every scan on
+ *  Wi-Fi gets the lock; only how long it is held is managed here:
+ *  <ul>
+ *  <li>Not at all when not on Wi-Fi, where it does nothing.</li>
+ *  <li>Scans close together share one hold; the lock is kept for
+ *      BATCH_WINDOW after a scan instead of being released and taken
+ *      again, but never for longer than MAX_HOLD.</li>
+ *  <li>Each Wi-Fi network (BSSID and SSID, or gateway address) is
+ *      remembered with its gateway and whether the router was reachable
+ *      RESULT_DELAY after the last scan there. On a known network whose
+ *      gateway has not changed and where the router was reachable, within
+ *      KNOWN_REACHABLE_TTL, the gateway answers at once, so the lock is
+ *      released as soon as the scan ends and held for at most
+ *      KNOWN_MAX_HOLD.</li>
+ *  </ul>
+ *  The time the lock is held is recorded per day, for the last MAX_DAYS.
  *
  *  @since 0.9.41
  */
 public class SSDPLocker implements UPnPScannerCallback {
+    /** keep holding the lock this long after a scan, for the next one */
+    private static final long BATCH_WINDOW = 10*1000;
+    /** in case afterScan() never comes */
+    private static final long MAX_HOLD = 60*1000;
+    /** the same, on a known network */
+    private static final long KNOWN_MAX_HOLD = 15*1000;
+    private static final long KNOWN_REACHABLE_TTL = 24*60*60*1000L;
+    /** how long after a scan the router's reachability is checked, for peer tests to finish */
+    private static final long RESULT_DELAY = 5*60*1000;
+    private static final int MAX_NETWORKS = 16;
+    private static final int MAX_DAYS = 7;
+    private static final String FILE = "ssdp_locker.json";
+    /** what Android reports for the BSSID without location permission */
+    private static final String HIDDEN_BSSID = "02:00:00:00:00:00";
+
+    private static SSDPLocker sInstance;
 
+    private final WifiManager mWifi;
     private final MulticastLock lock;
+    private final Handler mHandler;
+    private final File mFile;
+    /** network key -> what was found there */
+    private final Map<String, Network> mNetworks = new TreeMap<>();
+    /** yyyy-MM-dd -> ms held */
+    private final Map<String, Long> mLockTime = new TreeMap<>();
+    private boolean mLoaded;
+    private long mHeldSince;
+    private long mMaxHold;
+    /** network of the current hold, null if not known */
+    private String mHoldKey;
+    private int mHoldGateway;
+    /** the hold is short, on a known network */
+    private boolean mKnown;
+    /** network of the last hold, for mRecordResult */
+    private String mResultKey;
+    private int mResultGateway;
+    private long mScans;
+    private long mScansKnown;
+
+    /**
+     *  The result of the last scan on a network.
+     */
+    private static class Network {
+        final int gateway;
+        final long scannedAt;
+        boolean reachable;
+
+        Network(int gateway, long scannedAt) {
+            this.gateway = gateway;
+            this.scannedAt = scannedAt;
+        }
+
+        JSONObject toJSON() throws JSONException {
+            JSONObject rv = new JSONObject();
+            rv.put("gateway", gateway);
+            rv.put("scannedAt", scannedAt);
+            rv.put("reachable", reachable);
+            return rv;
+        }
+
+        static Network fromJSON(JSONObject o) throws JSONException {
+            Network rv = new Network(o.getInt("gateway"), o.getLong("scannedAt"));
+            rv.reachable = o.getBoolean("reachable");
+            return rv;
+        }
+    }
+
+    public static synchronized SSDPLocker getInstance(Context context) {
+        if (sInstance == null)
+            sInstance = new SSDPLocker(context.getApplicationContext());
+        return sInstance;
+    }
 
-    public SSDPLocker(Context context) {
-        WifiManager wifi = (WifiManager) context.getApplicationContext().getSystemService(Context.WIFI_SERVICE);
-        lock = wifi.createMulticastLock("ssdp");
+    private SSDPLocker(Context context) {
+        mWifi = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+        lock = mWifi.createMulticastLock("ssdp");
         lock.setReferenceCounted(false);
+        mHandler = new Handler(Looper.getMainLooper());
+        mFile = new File(context.getFilesDir(), FILE);
     }
 
-    public void beforeScan() {
+    public synchronized void beforeScan() {
+        load();
+        mScans++;
+        mHandler.removeCallbacks(mRelease);
+        if (lock.isHeld()) {
+            // Batched with the previous scan
+            mHandler.postDelayed(mRelease, Math.max(0, mHeldSince + mMaxHold - SystemClock.elapsedRealtime()));
+            return;
+        }
+
+        WifiInfo info = mWifi.getConnectionInfo();
+        if (info == null || info.getNetworkId() == -1)
+            return;
+        DhcpInfo dhcp = mWifi.getDhcpInfo();
+        int gateway = dhcp != null ? dhcp.gateway : 0;
+        String key = getKey(info, gateway);
+        Network network = key != null ? mNetworks.get(key) : null;
+        mKnown = network != null && network.gateway == gateway && network.reachable &&
+                 System.currentTimeMillis() - network.scannedAt < KNOWN_REACHABLE_TTL;
+        if (mKnown) {
+            mScansKnown++;
+            Util.d("UPnP scan on known network, short multicast lock hold");
+        }
+        mHoldKey = key;
+        mHoldGateway = gateway;
+        mMaxHold = mKnown ? KNOWN_MAX_HOLD : MAX_HOLD;
+
         lock.acquire();
+        mHeldSince = SystemClock.elapsedRealtime();
+        mHandler.postDelayed(mRelease, mMaxHold);
+    }
+
+    public synchronized void afterScan() {
+        if (!lock.isHeld())
+            return;
+        mHandler.removeCallbacks(mRelease);
+        long left = mHeldSince + mMaxHold - SystemClock.elapsedRealtime();
+        mHandler.postDelayed(mRelease, Math.max(0, Math.min(mKnown ? 0 : BATCH_WINDOW, left)));
+    }
+
+    /**
+     *  Release now, e.g. when the router stops.
+     */
+    public synchronized void release() {
+        mHandler.removeCallbacks(mRecordResult);
+        releaseLock();
+    }
+
+    private void releaseLock() {
+        mHandler.removeCallbacks(mRelease);
+        if (!lock.isHeld())
+            return;
+        lock.release();
+        long held = SystemClock.elapsedRealtime() - mHeldSince;
+        String today = today();
+        Long old = mLockTime.get(today);
+        mLockTime.put(today, held + (old != null ? old : 0));
+        while (mLockTime.size() > MAX_DAYS) {
+            mLockTime.remove(mLockTime.keySet().iterator().next());
+        }
+        save();
+        Util.d("Multicast lock released after " + held + " ms");
+    }
+
+    private final Runnable mRelease = new Runnable() {
+        public void run() {
+            synchronized (SSDPLocker.this) {
+                releaseLock();
+                if (mHoldKey == null)
+                    return;
+                mResultKey = mHoldKey;
+                mResultGateway = mHoldGateway;
+                mHandler.removeCallbacks(mRecordResult);
+                mHandler.postDelayed(mRecordResult, RESULT_DELAY);
+            }
+        }
+    };
+
+    /**
+     *  Remember whether the router became reachable after the last hold,
+     *  if still on the same network.
+     */
+    private final Runnable mRecordResult = new Runnable() {
+        public void run() {
+            synchronized (SSDPLocker.this) {
+                RouterContext ctx = Util.getRouterContext();
+                if (ctx == null || !ctx.router().isAlive())
+                    return;
+                WifiInfo info = mWifi.getConnectionInfo();
+                if (info == null || info.getNetworkId() == -1)
+                    return;
+                DhcpInfo dhcp = mWifi.getDhcpInfo();
+                int gateway = dhcp != null ? dhcp.gateway : 0;
+                if (gateway != mResultGateway || !mResultKey.equals(getKey(info, gateway)))
+                    return;
+                Network network = new Network(gateway, System.currentTimeMillis());
+                network.reachable = isReachable(ctx);
+                mNetworks.remove(mResultKey);
+                mNetworks.put(mResultKey, network);
+                trimNetworks();
+                save();
+            }
+        }
+    };
+
+    /**
+     *  @return ms the multicast lock was held each day, oldest first,
+     *          including the current hold
+     */
+    public synchronized Map<String, Long> getLockTimes() {
+        load();
+        Map<String, Long> rv = new TreeMap<>(mLockTime);
+        if (lock.isHeld()) {
+            String today = today();
+            Long old = rv.get(today);
+            rv.put(today, SystemClock.elapsedRealtime() - mHeldSince + (old != null ? old : 0));
+        }
+        return rv;
+    }
+
+    /**
+     *  @return ms the multicast lock was held today
+     */
+    public long getLockTimeToday() {
+        Long rv = getLockTimes().get(today());
+        return rv != null ? rv : 0;
+    }
+
+    /**
+     *  @return UPnP scans since the app started
+     */
+    public synchronized long getScans() {
+        return mScans;
+    }
+
+    /**
+     *  @return UPnP scans since the app started on a known network,
+     *          with a short hold
+     */
+    public synchronized long getScansKnown() {
+        return mScansKnown;
+    }
+
+    /**
+     *  @return null if the network can't be told apart from others
+     */
+    private static String getKey(WifiInfo info, int gateway) {
+        String bssid = info.getBSSID();
+        if (bssid != null && !HIDDEN_BSSID.equals(bssid))
+            return bssid + ' ' + info.getSSID();
+        if (gateway != 0)
+            return "gw " + gateway;
+        return null;
+    }
+
+    /**
+     *  The router does not tell us what a scan found, but if it became
+     *  reachable the gateway answered, and will again as quickly.
+     */
+    private static boolean isReachable(RouterContext ctx) {
+        CommSystemFacade.Status status = ctx.commSystem().getStatus();
+        switch (status) {
+            case OK:
+            case IPV4_OK_IPV6_UNKNOWN:
+            case IPV4_OK_IPV6_FIREWALLED:
+            case IPV4_UNKNOWN_IPV6_OK:
+            case IPV4_DISABLED_IPV6_OK:
+            case IPV4_SNAT_IPV6_OK:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     *  Forget the networks scanned longest ago.
+     */
+    private void trimNetworks() {
+        while (mNetworks.size() > MAX_NETWORKS) {
+            String oldest = null;
+            long oldestScan = Long.MAX_VALUE;
+            for (Map.Entry<String, Network> e : mNetworks.entrySet()) {
+                if (e.getValue().scannedAt < oldestScan) {
+                    oldest = e.getKey();
+                    oldestScan = e.getValue().scannedAt;
+                }
+            }
+            mNetworks.remove(oldest);
+        }
+    }
+
+    private static String today() {
+        return new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(new Date());
+    }
+
+    private void save() {
+        OutputStream out = null;
+        try {
+            JSONObject networks = new JSONObject();
+            for (Map.Entry<String, Network> e : mNetworks.entrySet()) {
+                networks.put(e.getKey(), e.getValue().toJSON());
+            }
+            JSONObject days = new JSONObject();
+            for (Map.Entry<String, Long> e : mLockTime.entrySet()) {
+                days.put(e.getKey(), e.getValue());
+            }
+            JSONObject o = new JSONObject();
+            o.put("networks", networks);
+            o.put("lockTime", days);
+            out = new FileOutputStream(mFile);
+            out.write(o.toString().getBytes("UTF-8"));
+        } catch (IOException | JSONException e) {
+            Util.e("Failed to save UPnP scan state", e);
+        } finally {
+            if (out != null) try { out.close(); } catch (IOException ioe) {}
+        }
     }
 
-    public void afterScan() {
-        if (lock.isHeld())
-            lock.release();
+    private void load() {
+        if (mLoaded)
+            return;
+        mLoaded = true;
+        if (!mFile.exists())
+            return;
+        InputStream in = null;
+        try {
+            in = new FileInputStream(mFile);
+            byte[] buf = new byte[(int) mFile.length()];
+            int off = 0;
+            int read;
+            while (off < buf.length && (read = in.read(buf, off, buf.length - off)) > 0) {
+                off += read;
+            }
+            JSONObject o = new JSONObject(new String(buf, 0, off, "UTF-8"));
+            JSONObject networks = o.getJSONObject("networks");
+            for (Iterator<String> iter = networks.keys(); iter.hasNext(); ) {
+                String key = iter.next();
+                mNetworks.put(key, Network.fromJSON(networks.getJSONObject(key)));
+            }
+            JSONObject days = o.getJSONObject("lockTime");
+            for (Iterator<String> iter = days.keys(); iter.hasNext(); ) {
+                String key = iter.next();
+                mLockTime.put(key, days.getLong(key));
+            }
+        } catch (IOException | JSONException e) {
+            Util.e("Failed to load UPnP scan state", e);
+        } finally {
+            if (in != null) try { in.close(); } catch (IOException ioe) {}
+        }
     }
 }
@@ -0,0 +1,222 @@
+package net.i2p.android.router.service;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import net.i2p.android.router.util.Util;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *  Records when each phase of router startup is reached, from the service
+ *  being started to the first client tunnels being ready.
+ *  <p/>
+ *  Times are taken from SystemClock.elapsedRealtime(), so they are not
+ *  affected by clock changes, and stored as offsets from the start.
+ *  The last MAX_BOOTS boots are kept in a JSON file.
+ *
+ *  @since 0.9.45
+ */
+public class StartupTimeline {
+    public static final String PHASE_SERVICE_START = "service_start";
+    public static final String PHASE_STARTER = "starter_thread";
+    public static final String PHASE_ROUTER_CREATED = "router_created";
+    public static final String PHASE_ROUTER_STARTED = "router_started";
+    public static final String PHASE_ROUTER_RUNNING = "router_running";
+    public static final String PHASE_I2PTUNNEL_STARTED = "i2ptunnel_started";
+    public static final String PHASE_CLIENT_TUNNELS = "client_tunnels_ready";
+
+    private static final String FILE = "startup_timeline.json";
+    private static final int MAX_BOOTS = 10;
+
+    private static StartupTimeline sInstance;
+
+    private final File mFile;
+    private List<Boot> mBoots;
+    private Boot mCurrent;
+    private long mStart;
+
+    /**
+     *  One startup: the wall clock time it began, and the phases reached
+     *  in order, as milliseconds since then.
+     */
+    public static class Boot {
+        public final long startedAt;
+        public final Map<String, Long> phases = new LinkedHashMap<>();
+
+        Boot(long startedAt) {
+            this.startedAt = startedAt;
+        }
+
+        /**
+         *  @return ms from the start to the last phase reached
+         */
+        public long getDuration() {
+            long rv = 0;
+            for (Long t : phases.values()) {
+                rv = Math.max(rv, t);
+            }
+            return rv;
+        }
+
+        public boolean isComplete() {
+            return phases.containsKey(PHASE_CLIENT_TUNNELS);
+        }
+
+        JSONObject toJSON() throws JSONException {
+            JSONObject rv = new JSONObject();
+            rv.put("startedAt", startedAt);
+            JSONObject p = new JSONObject();
+            for (Map.Entry<String, Long> e : phases.entrySet()) {
+                p.put(e.getKey(), e.getValue());
+            }
+            rv.put("phases", p);
+            return rv;
+        }
+
+        static Boot fromJSON(JSONObject o) throws JSONException {
+            Boot rv = new Boot(o.getLong("startedAt"));
+            JSONObject p = o.getJSONObject("phases");
+            for (Iterator<String> iter = p.keys(); iter.hasNext(); ) {
+                String key = iter.next();
+                rv.phases.put(key, p.getLong(key));
+            }
+            return rv;
+        }
+    }
+
+    public static synchronized StartupTimeline getInstance(Context ctx) {
+        if (sInstance == null)
+            sInstance = new StartupTimeline(new File(ctx.getFilesDir(), FILE));
+        return sInstance;
+    }
+
+    private StartupTimeline(File file) {
+        mFile = file;
+    }
+
+    /**
+     *  Start recording a new boot. Any boot still in progress is saved as it is.
+     */
+    public synchronized void begin() {
+        if (mCurrent != null)
+            save();
+        mStart = SystemClock.elapsedRealtime();
+        mCurrent = new Boot(System.currentTimeMillis());
+        mCurrent.phases.put(PHASE_SERVICE_START, 0L);
+    }
+
+    /**
+     *  Record that a phase has been reached. Only the first time counts.
+     *  Ignored if no boot is being recorded.
+     */
+    public synchronized void mark(String phase) {
+        if (mCurrent == null || mCurrent.phases.containsKey(phase))
+            return;
+        long t = SystemClock.elapsedRealtime() - mStart;
+        mCurrent.phases.put(phase, t);
+        Util.d("Startup phase " + phase + " at " + t + " ms");
+        if (PHASE_CLIENT_TUNNELS.equals(phase))
+            save();
+    }
+
+    /**
+     *  Stop recording, saving what was reached so far.
+     */
+    public synchronized void end() {
+        if (mCurrent != null)
+            save();
+    }
+
+    /**
+     *  @return the recorded boots, newest first, including one in progress
+     */
+    public synchronized List<Boot> getBoots() {
+        List<Boot> rv = new ArrayList<>(load());
+        if (mCurrent != null)
+            rv.add(mCurrent);
+        Collections.reverse(rv);
+        return rv;
+    }
+
+    /**
+     *  @return the recorded boots, oldest first, as a JSON array
+     */
+    public synchronized String toJSON() {
+        JSONArray rv = new JSONArray();
+        try {
+            for (Boot boot : load()) {
+                rv.put(boot.toJSON());
+            }
+            if (mCurrent != null)
+                rv.put(mCurrent.toJSON());
+            return rv.toString(2);
+        } catch (JSONException je) {
+            return "[]";
+        }
+    }
+
+    private void save() {
+        List<Boot> boots = load();
+        boots.add(mCurrent);
+        mCurrent = null;
+        while (boots.size() > MAX_BOOTS) {
+            boots.remove(0);
+        }
+        OutputStream out = null;
+        try {
+            JSONArray array = new JSONArray();
+            for (Boot boot : boots) {
+                array.put(boot.toJSON());
+            }
+            out = new FileOutputStream(mFile);
+            out.write(array.toString().getBytes("UTF-8"));
+        } catch (IOException | JSONException e) {
+            Util.e("Failed to save startup timeline", e);
+        } finally {
+            if (out != null) try { out.close(); } catch (IOException ioe) {}
+        }
+    }
+
+    private List<Boot> load() {
+        if (mBoots != null)
+            return mBoots;
+        mBoots = new ArrayList<>();
+        if (!mFile.exists())
+            return mBoots;
+        InputStream in = null;
+        try {
+            in = new FileInputStream(mFile);
+            byte[] buf = new byte[(int) mFile.length()];
+            int off = 0;
+            int read;
+            while (off < buf.length && (read = in.read(buf, off, buf.length - off)) > 0) {
+                off += read;
+            }
+            JSONArray array = new JSONArray(new String(buf, 0, off, "UTF-8"));
+            for (int i = 0; i < array.length(); i++) {
+                mBoots.add(Boot.fromJSON(array.getJSONObject(i)));
+            }
+        } catch (IOException | JSONException e) {
+            Util.e("Failed to load startup timeline", e);
+        } finally {
+            if (in != null) try { in.close(); } catch (IOException ioe) {}
+        }
+        return mBoots;
+    }
+}
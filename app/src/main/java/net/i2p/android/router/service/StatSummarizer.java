@@ -1,6 +1,9 @@
 package net.i2p.android.router.service;
 
+import net.i2p.android.router.util.PowerProfileManager;
 import net.i2p.android.router.util.Util;
+import net.i2p.android.util.AppScheduler;
+import net.i2p.android.util.MemoryGovernor;
 import net.i2p.router.RouterContext;
 import net.i2p.stat.Rate;
 import net.i2p.stat.RateStat;
@@ -10,13 +13,16 @@ import java.util.List;
 import java.util.StringTokenizer;
 import java.util.concurrent.CopyOnWriteArrayList;
 
-public class StatSummarizer implements Runnable {
+public class StatSummarizer implements Runnable, PowerProfileManager.Listener {
     private final RouterContext _context;
     private final List<SummaryListener> _listeners;
     // TODO remove static instance
     private static StatSummarizer _instance;
-    private volatile boolean _isRunning = true;
-    private Thread _thread;
+    private String _specs = "";
+    private AppScheduler.Task _task;
+
+    /** how often to check for a changed stat.summaries setting */
+    private static final long CHECK_INTERVAL = 60 * 1000;
 
     public StatSummarizer() {
         _context = Util.getRouterContext();
@@ -28,17 +34,73 @@ public class StatSummarizer implements Runnable {
 
     public static StatSummarizer instance() { return _instance; }
 
-    public void run() {
+    /**
+     *  Check the settings now and then every CHECK_INTERVAL,
+     *  on the app scheduler.
+     *
+     *  @since 0.9.45
+     */
+    public synchronized void start() {
         // We can't do anything without a RouterContext
-        if (_context == null)
+        if (_context == null || _task != null)
             return;
+        _task = AppScheduler.getInstance().schedule(this, 0, CHECK_INTERVAL, 0);
+        PowerProfileManager.getInstance().addListener(this);
+        MemoryGovernor.getInstance().register("Graph history",
+                MemoryGovernor.PRIORITY_HISTORY, _trimmer);
+    }
+
+    /**
+     *  Keeps the newer half of the graphed history, or none of it.
+     */
+    private final MemoryGovernor.Cache _trimmer = new MemoryGovernor.Cache() {
+        public long getSize() {
+            long rv = 0;
+            for (SummaryListener lsnr : _listeners) {
+                rv += lsnr.getSize();
+            }
+            return rv;
+        }
 
-        _thread = Thread.currentThread();
-        String specs = "";
-        while (_isRunning && _context.router().isAlive()) {
-            specs = adjustDatabases(specs);
-            try { Thread.sleep(60 * 1000);} catch (InterruptedException ie) {}
+        public void trim(boolean all) {
+            for (SummaryListener lsnr : _listeners) {
+                lsnr.trim(all ? 0 : SummaryListener.HISTORY_SIZE / 2);
+            }
         }
+    };
+
+    /**
+     *  Stop recording the graphed stats while the device is idle,
+     *  leaving a gap in the graphs. The router keeps its own stats.
+     *
+     *  @since 0.9.45
+     */
+    public synchronized void onLowPowerChanged(boolean lowPower) {
+        if (_task == null)
+            return;
+        for (SummaryListener lsnr : _listeners) {
+            if (lowPower)
+                lsnr.stopListening();
+            else
+                lsnr.startListening();
+        }
+        _task.setPeriod(lowPower ? PowerProfileManager.IDLE_UPDATE_INTERVAL : CHECK_INTERVAL);
+    }
+
+    public void run() {
+        if (!_context.router().isAlive())
+            return;
+        _specs = adjustDatabases(_specs);
+    }
+
+    /**
+     *  Pick up a changed stat.summaries setting now instead of at the next check.
+     *
+     *  @since 0.9.45
+     */
+    public synchronized void reconfigure() {
+        if (_task != null)
+            _task.runNow();
     }
 
     /** list of SummaryListener instances */
@@ -133,9 +195,14 @@ public class StatSummarizer implements Runnable {
 
     private class Shutdown implements Runnable {
         public void run() {
-            _isRunning = false;
-            if (_thread != null)
-                _thread.interrupt();
+            PowerProfileManager.getInstance().removeListener(StatSummarizer.this);
+            MemoryGovernor.getInstance().unregister(_trimmer);
+            synchronized (StatSummarizer.this) {
+                if (_task != null) {
+                    _task.cancel();
+                    _task = null;
+                }
+            }
             for (SummaryListener lsnr : _listeners) {
                 lsnr.stopListening();
             }
@@ -13,6 +13,8 @@ import java.util.Observer;
 
 public class SummaryListener implements RateSummaryListener {
     public static final int HISTORY_SIZE = 30;
+    /** rough size of one point in the series */
+    private static final int POINT_SIZE = 48;
 
     private final I2PAppContext _context;
     private final Rate _rate;
@@ -43,7 +45,7 @@ public class SummaryListener implements RateSummaryListener {
         _notifier.deleteObserver(observer);
     }
 
-    public void add(double totalValue, long eventCount, double totalEventTime,
+    public synchronized void add(double totalValue, long eventCount, double totalEventTime,
             long period) {
         long when = now();
         double val = eventCount > 0 ? (totalValue / eventCount) : 0d;
@@ -56,6 +58,29 @@ public class SummaryListener implements RateSummaryListener {
         _notifier.notifyObservers();
     }
 
+    /**
+     *  @return estimated bytes used by the series
+     *  @since 0.9.45
+     */
+    public synchronized long getSize() {
+        return _series != null ? (long) _series.size() * POINT_SIZE : 0;
+    }
+
+    /**
+     *  Drop the oldest points.
+     *
+     *  @param keep how many of the newest points to keep
+     *  @since 0.9.45
+     */
+    public synchronized void trim(int keep) {
+        if (_series == null)
+            return;
+        while (_series.size() > keep) {
+            _series.removeFirst();
+        }
+        _notifier.notifyObservers();
+    }
+
     public Rate getRate() { return _rate; }
 
     public String getName() { return _name; }
@@ -68,7 +93,9 @@ public class SummaryListener implements RateSummaryListener {
         RateStat rs = _rate.getRateStat();
         long period = _rate.getPeriod();
         _name = rs.getName() + "." + period;
-        _series = new SimpleXYSeries(_name);
+        // keep the history when restarted
+        if (_series == null)
+            _series = new SimpleXYSeries(_name);
         _rate.setSummaryListener(this);
     }
 
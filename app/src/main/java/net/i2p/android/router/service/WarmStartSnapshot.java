@@ -0,0 +1,196 @@
+package net.i2p.android.router.service;
+
+import net.i2p.android.router.util.Util;
+import net.i2p.data.Base64;
+import net.i2p.data.Hash;
+import net.i2p.data.router.RouterInfo;
+import net.i2p.router.RouterContext;
+import net.i2p.router.peermanager.PeerProfile;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ *  The most reliable recently-used peers and their RouterInfos,
+ *  saved in one file when the router shuts down.
+ *  <p/>
+ *  After a few days offline the NetDbPruner keeps only the newest
+ *  RouterInfo files, and the router itself expires RouterInfos while
+ *  it runs, so the peers that built our tunnels are often gone from
+ *  netDb/ at the next start. Before the router is created, the
+ *  RouterInfos of those peers are written back from the snapshot, so
+ *  the router loads them with the rest of the NetDb and can use them
+ *  for the first tunnel builds. Peers whose files are still there are
+ *  left alone.
+ *  <p/>
+ *  Format, big-endian: magic, version, creation time, peer count, then
+ *  for each peer its hash, the tunnels it agreed to, and its RouterInfo
+ *  length and bytes. Peers are stored most reliable first.
+ *
+ *  @since 0.9.45
+ */
+class WarmStartSnapshot {
+    private static final String FILE = "warmstart.dat";
+    private static final int MAGIC = 0x49325057; // I2PW
+    /** version 1 had no hashes, and is deleted unread */
+    private static final int VERSION = 2;
+    private static final int MAX_PEERS = 100;
+    /** peers not heard from in this long are not worth saving */
+    private static final long MAX_PEER_AGE = 2*60*60*1000L;
+    /** the router will not load RouterInfos this old */
+    private static final long MAX_SNAPSHOT_AGE = 14*24*60*60*1000L;
+    private static final int MAX_RI_SIZE = 4096;
+
+    private WarmStartSnapshot() {}
+
+    /**
+     *  Call while the NetDb and profiles are still up.
+     */
+    static void save(RouterContext ctx) {
+        long now = ctx.clock().now();
+        List<PeerProfile> profiles = new ArrayList<>();
+        for (Hash peer : ctx.profileOrganizer().selectAllPeers()) {
+            PeerProfile prof = ctx.profileOrganizer().getProfile(peer);
+            if (prof != null && prof.getTunnelHistory() != null &&
+                    prof.getLastHeardFrom() > now - MAX_PEER_AGE &&
+                    prof.getTunnelHistory().getLifetimeAgreedTo() > 0)
+                profiles.add(prof);
+        }
+        Collections.sort(profiles, new Comparator<PeerProfile>() {
+            public int compare(PeerProfile l, PeerProfile r) {
+                long la = l.getTunnelHistory().getLifetimeAgreedTo();
+                long ra = r.getTunnelHistory().getLifetimeAgreedTo();
+                return la > ra ? -1 : (la < ra ? 1 : 0);
+            }
+        });
+
+        File tmp = new File(ctx.getRouterDir(), FILE + ".tmp");
+        DataOutputStream out = null;
+        try {
+            Hash us = ctx.routerHash();
+            List<PeerProfile> saved = new ArrayList<>();
+            List<byte[]> infos = new ArrayList<>();
+            for (PeerProfile prof : profiles) {
+                if (infos.size() >= MAX_PEERS)
+                    break;
+                if (prof.getPeer().equals(us))
+                    continue;
+                RouterInfo ri = ctx.netDb().lookupRouterInfoLocally(prof.getPeer());
+                if (ri == null)
+                    continue;
+                byte[] data = ri.toByteArray();
+                if (data == null || data.length > MAX_RI_SIZE)
+                    continue;
+                saved.add(prof);
+                infos.add(data);
+            }
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(now);
+            out.writeInt(infos.size());
+            for (int i = 0; i < infos.size(); i++) {
+                PeerProfile prof = saved.get(i);
+                out.write(prof.getPeer().getData());
+                out.writeLong(prof.getTunnelHistory().getLifetimeAgreedTo());
+                out.writeShort(infos.get(i).length);
+                out.write(infos.get(i));
+            }
+            out.close();
+            out = null;
+            if (!tmp.renameTo(new File(ctx.getRouterDir(), FILE)))
+                throw new IOException("rename failed");
+            Util.d("Saved " + infos.size() + " peers for warm start");
+        } catch (IOException ioe) {
+            Util.e("Failed to save warm start snapshot", ioe);
+            tmp.delete();
+        } finally {
+            if (out != null) try { out.close(); } catch (IOException ioe) {}
+        }
+    }
+
+    /**
+     *  Write the saved RouterInfos whose files are missing back to the
+     *  NetDb directory. Must be called before the router is created,
+     *  and after the NetDbPruner. The snapshot is used only once, and
+     *  one that is unreadable, too old or from an earlier version is
+     *  deleted.
+     *
+     *  @param routerDir the router's config dir
+     *  @return the number of RouterInfos written back
+     */
+    static int restore(File routerDir) {
+        File file = new File(routerDir, FILE);
+        if (!file.exists())
+            return 0;
+        int added = 0;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            if (buf.getInt() != MAGIC || buf.get() != VERSION)
+                return 0;
+            long created = buf.getLong();
+            if (created < System.currentTimeMillis() - MAX_SNAPSHOT_AGE)
+                return 0;
+            int count = buf.getInt();
+            byte[] hash = new byte[Hash.HASH_LENGTH];
+            byte[] data = new byte[MAX_RI_SIZE];
+            for (int i = 0; i < count && i < MAX_PEERS; i++) {
+                buf.get(hash);
+                buf.getLong(); // tunnels agreed, for ordering only
+                int len = buf.getShort() & 0xffff;
+                if (len > MAX_RI_SIZE)
+                    break;
+                File ri = NetDbPruner.routerInfoFile(routerDir, Base64.encode(hash));
+                if (ri.exists()) {
+                    buf.position(buf.position() + len);
+                    continue;
+                }
+                buf.get(data, 0, len);
+                // The router checks the signature and expiration when it loads it
+                if (write(ri, data, len))
+                    added++;
+            }
+            Util.d("Restored " + added + " of " + count + " warm start peers");
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            Util.e("Failed to read warm start snapshot", e);
+        } finally {
+            if (raf != null) try { raf.close(); } catch (IOException ioe) {}
+            file.delete();
+        }
+        return added;
+    }
+
+    private static boolean write(File file, byte[] data, int len) {
+        File dir = file.getParentFile();
+        if (!dir.exists() && !dir.mkdirs())
+            return false;
+        File tmp = new File(dir, file.getName() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tmp);
+            out.write(data, 0, len);
+            out.close();
+            out = null;
+            return tmp.renameTo(file);
+        } catch (IOException ioe) {
+            Util.e("Failed to restore " + file.getName(), ioe);
+            return false;
+        } finally {
+            if (out != null) try { out.close(); } catch (IOException ioe) {}
+            tmp.delete();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package net.i2p.android.router.stats;
+
+import net.i2p.data.Hash;
+import net.i2p.router.RouterContext;
+import net.i2p.router.transport.Transport;
+import net.i2p.router.transport.ntcp.NTCPConnection;
+import net.i2p.router.transport.ntcp.NTCPTransport;
+import net.i2p.router.transport.udp.PeerState;
+import net.i2p.router.transport.udp.UDPTransport;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The state of one transport connection at one moment, read directly
+ * from the NTCP and SSU transports instead of through renderStatusHTML().
+ *
+ * @since 0.9.45
+ */
+public class PeerSnapshot {
+    public static final String NTCP = "NTCP";
+    public static final String SSU = "SSU";
+
+    /** not known for this transport */
+    public static final int UNKNOWN = -1;
+
+    public final Hash peer;
+    public final String transport;
+    public final boolean inbound;
+    /** bytes per second */
+    public final float sendRate;
+    public final float recvRate;
+    /** ms, or UNKNOWN */
+    public final int rtt;
+    /** congestion window in bytes, or UNKNOWN */
+    public final int cwnd;
+    /** ms since anything was sent or received */
+    public final long idle;
+    /** ms, positive if the peer is ahead of us */
+    public final long skew;
+    /** ms since the connection was established */
+    public final long uptime;
+
+    private PeerSnapshot(Hash peer, String transport, boolean inbound,
+                         float sendRate, float recvRate, int rtt, int cwnd,
+                         long idle, long skew, long uptime) {
+        this.peer = peer;
+        this.transport = transport;
+        this.inbound = inbound;
+        this.sendRate = sendRate;
+        this.recvRate = recvRate;
+        this.rtt = rtt;
+        this.cwnd = cwnd;
+        this.idle = idle;
+        this.skew = skew;
+        this.uptime = uptime;
+    }
+
+    public float getRate() {
+        return sendRate + recvRate;
+    }
+
+    /**
+     * Fields only, for telling whether a row needs rebinding.
+     */
+    public boolean sameAs(PeerSnapshot o) {
+        return peer.equals(o.peer) && transport.equals(o.transport) &&
+                inbound == o.inbound && sendRate == o.sendRate &&
+                recvRate == o.recvRate && rtt == o.rtt && cwnd == o.cwnd &&
+                idle / 1000 == o.idle / 1000 && skew / 1000 == o.skew / 1000;
+    }
+
+    /**
+     * @return a snapshot of every NTCP and SSU connection, in no particular order
+     */
+    public static List<PeerSnapshot> capture(RouterContext ctx) {
+        List<PeerSnapshot> rv = new ArrayList<>();
+        long now = ctx.clock().now();
+        for (Transport t : ctx.commSystem().getTransports().values()) {
+            if (t instanceof NTCPTransport) {
+                for (NTCPConnection con : ((NTCPTransport) t).getPeers()) {
+                    if (con.getRemotePeer() == null)
+                        continue; // still establishing
+                    rv.add(new PeerSnapshot(con.getRemotePeer().calculateHash(), NTCP,
+                            con.isInbound(), con.getSendRate(), con.getRecvRate(),
+                            UNKNOWN, UNKNOWN,
+                            Math.min(con.getTimeSinceReceive(), con.getTimeSinceSend()),
+                            con.getClockSkew() * 1000, con.getUptime()));
+                }
+            } else if (t instanceof UDPTransport) {
+                for (PeerState ps : ((UDPTransport) t).getPeers()) {
+                    long idle = now - Math.max(ps.getLastReceiveTime(), ps.getLastSendTime());
+                    rv.add(new PeerSnapshot(ps.getRemotePeer(), SSU,
+                            ps.isInbound(), ps.getSendBps(), ps.getReceiveBps(),
+                            ps.getRTT(), ps.getSendWindowBytes(),
+                            Math.max(0, idle), ps.getClockSkew(),
+                            now - ps.getKeyEstablishedTime()));
+                }
+            }
+        }
+        return rv;
+    }
+
+    public static final Comparator<PeerSnapshot> BY_RATE = new Comparator<PeerSnapshot>() {
+        public int compare(PeerSnapshot l, PeerSnapshot r) {
+            return Float.compare(l.getRate(), r.getRate());
+        }
+    };
+
+    /** unknown sorts first */
+    public static final Comparator<PeerSnapshot> BY_RTT = new Comparator<PeerSnapshot>() {
+        public int compare(PeerSnapshot l, PeerSnapshot r) {
+            return l.rtt < r.rtt ? -1 : (l.rtt > r.rtt ? 1 : 0);
+        }
+    };
+
+    public static final Comparator<PeerSnapshot> BY_IDLE = new Comparator<PeerSnapshot>() {
+        public int compare(PeerSnapshot l, PeerSnapshot r) {
+            return l.idle < r.idle ? -1 : (l.idle > r.idle ? 1 : 0);
+        }
+    };
+
+    /** by size, ahead or behind */
+    public static final Comparator<PeerSnapshot> BY_SKEW = new Comparator<PeerSnapshot>() {
+        public int compare(PeerSnapshot l, PeerSnapshot r) {
+            long ls = Math.abs(l.skew);
+            long rs = Math.abs(r.skew);
+            return ls < rs ? -1 : (ls > rs ? 1 : 0);
+        }
+    };
+}
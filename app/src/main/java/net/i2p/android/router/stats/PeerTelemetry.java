@@ -0,0 +1,227 @@
+package net.i2p.android.router.stats;
+
+import net.i2p.android.router.util.PowerProfileManager;
+import net.i2p.android.router.util.Util;
+import net.i2p.android.util.AppScheduler;
+import net.i2p.android.util.MemoryGovernor;
+import net.i2p.router.RouterContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *  Recent history of the busiest peer connections, sampled from
+ *  PeerSnapshot into fixed-size ring buffers of primitive samples.
+ *  <p/>
+ *  Only the MAX_PEERS fastest connections are sampled, and at most
+ *  MAX_PEERS histories are kept. A connection that drops out of the
+ *  top keeps its history until the slot is needed for another one,
+ *  so memory stays bounded however much the peers churn.
+ *
+ *  @since 0.9.45
+ */
+public class PeerTelemetry implements Runnable, PowerProfileManager.Listener {
+    public static final int SEND_RATE = 0;
+    public static final int RECV_RATE = 1;
+    /** 0 for NTCP */
+    public static final int RTT = 2;
+    /** 0 for NTCP */
+    public static final int CWND = 3;
+    private static final int METRICS = 4;
+
+    private static final int MAX_PEERS = 32;
+    private static final long INTERVAL = 15 * 1000;
+    /** 30 minutes of history */
+    public static final int HISTORY_SIZE = 120;
+
+    private static PeerTelemetry sInstance;
+
+    /** connection key -> history, at most MAX_PEERS */
+    private final Map<String, History> mHistories = new HashMap<>();
+    private final Set<String> mCurrent = new HashSet<>();
+    private AppScheduler.Task mTask;
+    private long mSampleCount;
+
+    /**
+     *  Ring buffers for one connection, oldest first.
+     */
+    private static class History {
+        final float[][] values = new float[METRICS][HISTORY_SIZE];
+        int head;
+        int count;
+        long lastSampled;
+
+        void add(PeerSnapshot p) {
+            values[SEND_RATE][head] = p.sendRate;
+            values[RECV_RATE][head] = p.recvRate;
+            values[RTT][head] = Math.max(0, p.rtt);
+            values[CWND][head] = Math.max(0, p.cwnd);
+            head = (head + 1) % HISTORY_SIZE;
+            if (count < HISTORY_SIZE)
+                count++;
+        }
+
+        void clear() {
+            head = 0;
+            count = 0;
+        }
+    }
+
+    public static synchronized PeerTelemetry getInstance() {
+        if (sInstance == null)
+            sInstance = new PeerTelemetry();
+        return sInstance;
+    }
+
+    private PeerTelemetry() {}
+
+    /**
+     *  @return the key for the connection, the same as long as it lasts
+     */
+    public static String getKey(PeerSnapshot peer) {
+        return peer.transport + ':' + peer.peer.toBase64();
+    }
+
+    /**
+     *  Start sampling on the app scheduler while the router runs.
+     */
+    public synchronized void start() {
+        if (mTask != null)
+            return;
+        mTask = AppScheduler.getInstance().schedule(this, INTERVAL, INTERVAL, 0);
+        PowerProfileManager.getInstance().addListener(this);
+        MemoryGovernor.getInstance().register("Peer history",
+                MemoryGovernor.PRIORITY_HISTORY, mTrimmer);
+    }
+
+    public synchronized void stop() {
+        if (mTask == null)
+            return;
+        mTask.cancel();
+        mTask = null;
+        PowerProfileManager.getInstance().removeListener(this);
+        MemoryGovernor.getInstance().unregister(mTrimmer);
+        mHistories.clear();
+        mCurrent.clear();
+    }
+
+    /**
+     *  Nobody is looking at the graphs while the device is idle
+     */
+    public synchronized void onLowPowerChanged(boolean lowPower) {
+        if (mTask != null)
+            mTask.setPeriod(lowPower ? PowerProfileManager.IDLE_UPDATE_INTERVAL : INTERVAL);
+    }
+
+    public void run() {
+        RouterContext ctx = Util.getRouterContext();
+        if (ctx == null)
+            return;
+        List<PeerSnapshot> peers = PeerSnapshot.capture(ctx);
+        Collections.sort(peers, Collections.reverseOrder(PeerSnapshot.BY_RATE));
+        if (peers.size() > MAX_PEERS)
+            peers = peers.subList(0, MAX_PEERS);
+        record(peers);
+    }
+
+    private synchronized void record(List<PeerSnapshot> peers) {
+        long n = ++mSampleCount;
+        mCurrent.clear();
+        for (PeerSnapshot p : peers) {
+            mCurrent.add(getKey(p));
+        }
+        for (PeerSnapshot p : peers) {
+            String key = getKey(p);
+            History h = mHistories.get(key);
+            if (h == null) {
+                h = mHistories.size() < MAX_PEERS ? new History() : reuseOldest();
+                mHistories.put(key, h);
+            }
+            h.add(p);
+            h.lastSampled = n;
+        }
+    }
+
+    /**
+     *  Take the history of the connection sampled longest ago.
+     *  There is always one not in the current top, since there are
+     *  MAX_PEERS histories and at most MAX_PEERS current peers.
+     */
+    private History reuseOldest() {
+        String oldest = null;
+        long oldestSampled = Long.MAX_VALUE;
+        for (Map.Entry<String, History> e : mHistories.entrySet()) {
+            if (!mCurrent.contains(e.getKey()) && e.getValue().lastSampled < oldestSampled) {
+                oldest = e.getKey();
+                oldestSampled = e.getValue().lastSampled;
+            }
+        }
+        History h = mHistories.remove(oldest);
+        h.clear();
+        return h;
+    }
+
+    /**
+     *  @return the number of samples held for the connection
+     */
+    public synchronized int getCount(String key) {
+        History h = mHistories.get(key);
+        return h != null ? h.count : 0;
+    }
+
+    /**
+     *  Copy a metric's samples, oldest first.
+     *
+     *  @param metric one of the metric constants
+     *  @param out at least HISTORY_SIZE long
+     *  @return the number of samples copied, 0 if no history
+     */
+    public synchronized int copy(String key, int metric, float[] out) {
+        History h = mHistories.get(key);
+        if (h == null)
+            return 0;
+        int start = (h.head - h.count + HISTORY_SIZE) % HISTORY_SIZE;
+        for (int i = 0; i < h.count; i++) {
+            out[i] = h.values[metric][(start + i) % HISTORY_SIZE];
+        }
+        return h.count;
+    }
+
+    /**
+     *  @return the keys of the connections with history
+     */
+    public synchronized List<String> getKeys() {
+        return new ArrayList<>(mHistories.keySet());
+    }
+
+    /**
+     *  Drops the histories of connections no longer in the top,
+     *  or all of them.
+     */
+    private final MemoryGovernor.Cache mTrimmer = new MemoryGovernor.Cache() {
+        public long getSize() {
+            synchronized (PeerTelemetry.this) {
+                return (long) mHistories.size() * METRICS * HISTORY_SIZE * 4;
+            }
+        }
+
+        public void trim(boolean all) {
+            synchronized (PeerTelemetry.this) {
+                if (all) {
+                    mHistories.clear();
+                    return;
+                }
+                for (Iterator<String> iter = mHistories.keySet().iterator(); iter.hasNext(); ) {
+                    if (!mCurrent.contains(iter.next()))
+                        iter.remove();
+                }
+            }
+        }
+    };
+}
@@ -1,96 +1,166 @@
 package net.i2p.android.router.stats;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
-import android.webkit.WebView;
-import java.io.IOException;
-import java.io.StringWriter;
+import android.widget.TextView;
 
 import net.i2p.android.router.I2PFragmentBase;
 import net.i2p.android.router.R;
-import net.i2p.android.router.web.I2PWebViewClient;
-import net.i2p.router.CommSystemFacade;
+import net.i2p.android.util.AppScheduler;
+import net.i2p.android.widget.DividerItemDecoration;
+import net.i2p.android.widget.SparklineView;
+import net.i2p.data.DataHelper;
+import net.i2p.router.RouterContext;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The connected peers, from PeerSnapshot, sortable by rate, RTT,
+ * idle time and clock skew. Rows are updated in place as the
+ * snapshots change, and tapping one shows its PeerTelemetry graphs.
+ */
 public class PeersFragment extends I2PFragmentBase {
+    private static final long REFRESH_INTERVAL = 5 * 1000;
 
-    private I2PWebViewClient _wvClient;
+    private Handler mHandler;
+    private RecyclerView mList;
+    private TextView mEmpty;
+    private TextView[] mSortHeaders;
+    private final PeerAdapter mAdapter = new PeerAdapter();
+    private AppScheduler.Task mTask;
 
-    // TODO add some inline style
-    private static final String HEADER = "<html><head></head><body>";
-    private static final String FOOTER = "</body></html>";
+    /** also read by the sampler */
+    private volatile Comparator<PeerSnapshot> mSort = PeerSnapshot.BY_RATE;
+    private volatile boolean mDescending = true;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setHasOptionsMenu(true);
+        mHandler = new Handler();
     }
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState)
     {
-        View v = inflater.inflate(R.layout.peers, container, false);
-        WebView wv = (WebView) v.findViewById(R.id.peers_webview);
-        wv.getSettings().setLoadsImagesAutomatically(true); // was false
-        // http://stackoverflow.com/questions/2369310/webview-double-tap-zoom-not-working-on-a-motorola-droid-a855
-        wv.getSettings().setUseWideViewPort(true);
-        _wvClient = new I2PWebViewClient(this);
-        wv.setWebViewClient(_wvClient);
-        wv.getSettings().setBuiltInZoomControls(true);
+        View v = inflater.inflate(R.layout.fragment_peers, container, false);
+        mList = (RecyclerView) v.findViewById(R.id.list);
+        mList.setLayoutManager(new LinearLayoutManager(getActivity()));
+        mList.addItemDecoration(new DividerItemDecoration(getActivity(), DividerItemDecoration.VERTICAL_LIST));
+        mList.setAdapter(mAdapter);
+        mEmpty = (TextView) v.findViewById(R.id.empty);
+
+        mSortHeaders = new TextView[] {
+                (TextView) v.findViewById(R.id.peers_sort_rate),
+                (TextView) v.findViewById(R.id.peers_sort_rtt),
+                (TextView) v.findViewById(R.id.peers_sort_idle),
+                (TextView) v.findViewById(R.id.peers_sort_skew),
+        };
+        setSortListener(mSortHeaders[0], PeerSnapshot.BY_RATE, true);
+        setSortListener(mSortHeaders[1], PeerSnapshot.BY_RTT, false);
+        setSortListener(mSortHeaders[2], PeerSnapshot.BY_IDLE, false);
+        setSortListener(mSortHeaders[3], PeerSnapshot.BY_SKEW, true);
+        updateSortHeaders();
         return v;
     }
 
-    @Override
-    public void onResume() {
-        super.onResume();
-        update();
+    /**
+     * First tap sorts in the most useful direction, the next reverses it.
+     */
+    private void setSortListener(final TextView header, final Comparator<PeerSnapshot> sort,
+                                 final boolean descendingFirst) {
+        header.setTag(sort);
+        header.setOnClickListener(new View.OnClickListener() {
+            public void onClick(View view) {
+                if (mSort == sort) {
+                    mDescending = !mDescending;
+                } else {
+                    mSort = sort;
+                    mDescending = descendingFirst;
+                }
+                updateSortHeaders();
+                mAdapter.resort();
+            }
+        });
     }
 
-    public void update() {
-        WebView wv = (WebView) getActivity().findViewById(R.id.peers_webview);
-        wv.clearHistory(); // fixes having to hit back.
-        CommSystemFacade comm = getCommSystem();
-        String data;
-        if (comm != null) {
-            StringWriter out = new StringWriter(32*1024);
-            out.append(HEADER);
-            try {
-                comm.renderStatusHTML(out, "http://thiswontwork.i2p/peers", 0);
-                out.append(FOOTER);
-                data = out.toString().replaceAll("/themes", "themes");
-            } catch (IOException ioe) {
-                data = HEADER + "Error: " + ioe + FOOTER;
-            }
-        } else {
-            data = HEADER + "No peer data available. The router is not running." + FOOTER;
+    private void updateSortHeaders() {
+        for (TextView header : mSortHeaders) {
+            String label = header.getText().toString().replaceAll(" [▲▼]$", "");
+            if (header.getTag() == mSort)
+                label += mDescending ? " ▼" : " ▲";
+            header.setText(label);
         }
-        try {
-            // wv.loadData(data, "text/html", "UTF-8");
-            // figure out a way to get /themes/console/images/outbound.png to load
-            // String url = "file://" + _myDir + "/docs/";
-            String url = "file:///android_asset/";
-            wv.loadDataWithBaseURL(url, data, "text/html", "UTF-8", url);
-        } catch (Exception e) {
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        mTask = AppScheduler.getInstance().schedule(mSampler, 0, REFRESH_INTERVAL,
+                AppScheduler.FLAG_UI_ONLY);
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+        if (mTask != null) {
+            mTask.cancel();
+            mTask = null;
         }
     }
 
-    public boolean onBackPressed() {
-        WebView wv = (WebView) getActivity().findViewById(R.id.peers_webview);
-        _wvClient.cancelAll();
-        wv.stopLoading();
-
-        // We do not want to go back, or keep history... There is no need to.
-        // What we DO want to do is exit!
-        //if (wv.canGoBack()) {
-        //    wv.goBack();
-        //    return true;
-        //}
-        return false;
+    /**
+     * Refresh now, e.g. once the router is bound.
+     */
+    public void update() {
+        if (mTask != null)
+            mTask.runNow();
+    }
+
+    /**
+     * Takes the snapshot and sorts it off the main thread.
+     */
+    private final Runnable mSampler = new Runnable() {
+        public void run() {
+            RouterContext ctx = getRouterContext();
+            final List<PeerSnapshot> peers = ctx != null ? PeerSnapshot.capture(ctx) : null;
+            if (peers != null)
+                sort(peers);
+            mHandler.post(new Runnable() {
+                public void run() {
+                    if (!isAdded())
+                        return;
+                    if (peers == null) {
+                        mEmpty.setText(R.string.router_not_running);
+                        mAdapter.setPeers(new ArrayList<PeerSnapshot>());
+                    } else {
+                        mEmpty.setText(R.string.peers_none);
+                        mAdapter.setPeers(peers);
+                    }
+                    mEmpty.setVisibility(mAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+                }
+            });
+        }
+    };
+
+    private void sort(List<PeerSnapshot> peers) {
+        Comparator<PeerSnapshot> sort = mSort;
+        Collections.sort(peers, mDescending ? Collections.reverseOrder(sort) : sort);
     }
 
     @Override
@@ -109,4 +179,145 @@ public class PeersFragment extends I2PFragmentBase {
             return super.onOptionsItemSelected(item);
         }
     }
+
+    private class PeerAdapter extends RecyclerView.Adapter<PeerAdapter.ViewHolder> {
+        private List<PeerSnapshot> mPeers = new ArrayList<>();
+        /** PeerTelemetry keys of the rows showing their graphs */
+        private final Set<String> mExpanded = new HashSet<>();
+
+        class ViewHolder extends RecyclerView.ViewHolder {
+            final TextView name;
+            final TextView rate;
+            final TextView rtt;
+            final TextView idle;
+            final TextView skew;
+            final View history;
+            final TextView historyEmpty;
+            final SparklineView[] graphs;
+
+            ViewHolder(View v) {
+                super(v);
+                name = (TextView) v.findViewById(R.id.peer_name);
+                rate = (TextView) v.findViewById(R.id.peer_rate);
+                rtt = (TextView) v.findViewById(R.id.peer_rtt);
+                idle = (TextView) v.findViewById(R.id.peer_idle);
+                skew = (TextView) v.findViewById(R.id.peer_skew);
+                history = v.findViewById(R.id.peer_history);
+                historyEmpty = (TextView) v.findViewById(R.id.peer_history_empty);
+                // In PeerTelemetry metric order
+                graphs = new SparklineView[] {
+                        (SparklineView) v.findViewById(R.id.peer_send_graph),
+                        (SparklineView) v.findViewById(R.id.peer_recv_graph),
+                        (SparklineView) v.findViewById(R.id.peer_rtt_graph),
+                        (SparklineView) v.findViewById(R.id.peer_cwnd_graph),
+                };
+                v.setOnClickListener(new View.OnClickListener() {
+                    public void onClick(View view) {
+                        int pos = getAdapterPosition();
+                        if (pos == RecyclerView.NO_POSITION)
+                            return;
+                        String key = PeerTelemetry.getKey(mPeers.get(pos));
+                        if (!mExpanded.remove(key))
+                            mExpanded.add(key);
+                        notifyItemChanged(pos);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Only the rows that moved or changed are rebound.
+         */
+        void setPeers(final List<PeerSnapshot> peers) {
+            final List<PeerSnapshot> old = mPeers;
+            DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                public int getOldListSize() {
+                    return old.size();
+                }
+
+                public int getNewListSize() {
+                    return peers.size();
+                }
+
+                public boolean areItemsTheSame(int oldPos, int newPos) {
+                    PeerSnapshot o = old.get(oldPos);
+                    PeerSnapshot n = peers.get(newPos);
+                    return o.peer.equals(n.peer) && o.transport.equals(n.transport);
+                }
+
+                public boolean areContentsTheSame(int oldPos, int newPos) {
+                    return old.get(oldPos).sameAs(peers.get(newPos));
+                }
+            });
+            mPeers = peers;
+            diff.dispatchUpdatesTo(this);
+
+            // Forget the peers that went away, and redraw the graphs still shown
+            Set<String> current = new HashSet<>();
+            for (int i = 0; i < peers.size(); i++) {
+                String key = PeerTelemetry.getKey(peers.get(i));
+                current.add(key);
+                if (mExpanded.contains(key))
+                    notifyItemChanged(i);
+            }
+            mExpanded.retainAll(current);
+        }
+
+        void resort() {
+            List<PeerSnapshot> peers = new ArrayList<>(mPeers);
+            sort(peers);
+            setPeers(peers);
+        }
+
+        @Override
+        public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            View v = LayoutInflater.from(parent.getContext())
+                    .inflate(R.layout.listitem_peer, parent, false);
+            return new ViewHolder(v);
+        }
+
+        @Override
+        public void onBindViewHolder(ViewHolder holder, int position) {
+            PeerSnapshot p = mPeers.get(position);
+            holder.name.setText((p.inbound ? "← " : "→ ") +
+                    p.peer.toBase64().substring(0, 6) + ' ' + p.transport);
+            holder.rate.setText(DataHelper.formatSize((long) p.getRate()) + "B/s");
+            holder.rtt.setText(p.rtt == PeerSnapshot.UNKNOWN ? "-" : p.rtt + "ms");
+            holder.idle.setText(DataHelper.formatDuration(p.idle));
+            holder.skew.setText((p.skew < 0 ? "-" : "+") +
+                    DataHelper.formatDuration(Math.abs(p.skew)));
+            bindHistory(holder, PeerTelemetry.getKey(p), p.cwnd != PeerSnapshot.UNKNOWN);
+        }
+
+        private void bindHistory(ViewHolder holder, String key, boolean hasWindow) {
+            if (!mExpanded.contains(key)) {
+                holder.history.setVisibility(View.GONE);
+                return;
+            }
+            holder.history.setVisibility(View.VISIBLE);
+            PeerTelemetry telemetry = PeerTelemetry.getInstance();
+            boolean empty = telemetry.getCount(key) < 2;
+            holder.historyEmpty.setVisibility(empty ? View.VISIBLE : View.GONE);
+            for (int m = 0; m < holder.graphs.length; m++) {
+                SparklineView graph = holder.graphs[m];
+                boolean shown = !empty &&
+                        (hasWindow || (m != PeerTelemetry.RTT && m != PeerTelemetry.CWND));
+                ((View) graph.getParent()).setVisibility(shown ? View.VISIBLE : View.GONE);
+                if (!shown)
+                    continue;
+                // Each view keeps its own buffer, as setValues() does not copy
+                float[] values = (float[]) graph.getTag();
+                if (values == null) {
+                    values = new float[PeerTelemetry.HISTORY_SIZE];
+                    graph.setTag(values);
+                }
+                graph.setValues(values, telemetry.copy(key, m, values));
+            }
+        }
+
+        @Override
+        public int getItemCount() {
+            return mPeers.size();
+        }
+    }
 }
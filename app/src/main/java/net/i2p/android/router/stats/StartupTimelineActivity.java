@@ -0,0 +1,28 @@
+package net.i2p.android.router.stats;
+
+import android.os.Bundle;
+import android.support.v7.widget.Toolbar;
+
+import net.i2p.android.I2PActivityBase;
+import net.i2p.android.router.R;
+
+/**
+ * @since 0.9.45
+ */
+public class StartupTimelineActivity extends I2PActivityBase {
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_onepane);
+
+        Toolbar toolbar = (Toolbar) findViewById(R.id.main_toolbar);
+        setSupportActionBar(toolbar);
+        getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+
+        if (savedInstanceState == null) {
+            StartupTimelineFragment f = new StartupTimelineFragment();
+            getSupportFragmentManager().beginTransaction()
+                    .add(R.id.main_fragment, f).commit();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package net.i2p.android.router.stats;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.format.DateUtils;
+import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import net.i2p.android.router.R;
+import net.i2p.android.router.service.StartupTimeline;
+import net.i2p.android.widget.WaterfallView;
+import net.i2p.data.DataHelper;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shows the phases of the last few router startups as waterfalls,
+ * all drawn to the same scale.
+ *
+ * @since 0.9.45
+ */
+public class StartupTimelineFragment extends Fragment {
+    private RecyclerView mList;
+    private View mEmpty;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setHasOptionsMenu(true);
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container,
+                             Bundle savedInstanceState) {
+        View v = inflater.inflate(R.layout.fragment_startup_timeline, container, false);
+        mList = (RecyclerView) v.findViewById(R.id.list);
+        mList.setLayoutManager(new LinearLayoutManager(getActivity()));
+        mEmpty = v.findViewById(R.id.empty);
+        return v;
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        List<StartupTimeline.Boot> boots = StartupTimeline.getInstance(getActivity()).getBoots();
+        mList.setAdapter(new BootAdapter(boots));
+        mEmpty.setVisibility(boots.isEmpty() ? View.VISIBLE : View.GONE);
+    }
+
+    @Override
+    public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
+        inflater.inflate(R.menu.fragment_startup_timeline_actions, menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.action_export_json:
+                Intent intent = new Intent(Intent.ACTION_SEND);
+                intent.setType("application/json");
+                intent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.label_startup_timeline));
+                intent.putExtra(Intent.EXTRA_TEXT,
+                        StartupTimeline.getInstance(getActivity()).toJSON());
+                startActivity(Intent.createChooser(intent, getString(R.string.export_json)));
+                return true;
+
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+    }
+
+    private class BootAdapter extends RecyclerView.Adapter<BootAdapter.ViewHolder> {
+        private final List<StartupTimeline.Boot> mBoots;
+        private final long mScale;
+
+        class ViewHolder extends RecyclerView.ViewHolder {
+            final TextView title;
+            final WaterfallView waterfall;
+
+            ViewHolder(View v) {
+                super(v);
+                title = (TextView) v.findViewById(R.id.boot_title);
+                waterfall = (WaterfallView) v.findViewById(R.id.boot_waterfall);
+            }
+        }
+
+        BootAdapter(List<StartupTimeline.Boot> boots) {
+            mBoots = boots;
+            long scale = 0;
+            for (StartupTimeline.Boot boot : boots) {
+                scale = Math.max(scale, boot.getDuration());
+            }
+            mScale = scale;
+        }
+
+        @Override
+        public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            View v = LayoutInflater.from(parent.getContext())
+                    .inflate(R.layout.listitem_startup_boot, parent, false);
+            return new ViewHolder(v);
+        }
+
+        @Override
+        public void onBindViewHolder(ViewHolder holder, int position) {
+            StartupTimeline.Boot boot = mBoots.get(position);
+            String when = DateUtils.formatDateTime(getActivity(), boot.startedAt,
+                    DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME);
+            holder.title.setText(getString(boot.isComplete()
+                            ? R.string.startup_timeline_boot
+                            : R.string.startup_timeline_boot_incomplete,
+                    when, DataHelper.formatDuration(boot.getDuration())));
+
+            String[] labels = new String[boot.phases.size()];
+            long[] ends = new long[labels.length];
+            int i = 0;
+            for (Map.Entry<String, Long> e : boot.phases.entrySet()) {
+                labels[i] = e.getKey();
+                ends[i++] = e.getValue();
+            }
+            holder.waterfall.setPhases(labels, ends, mScale);
+        }
+
+        @Override
+        public int getItemCount() {
+            return mBoots.size();
+        }
+    }
+}
@@ -6,6 +6,7 @@ import android.content.Context;
 import android.net.Uri;
 
 import net.i2p.android.router.provider.CacheProvider;
+import net.i2p.android.util.MemoryGovernor;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -41,6 +42,8 @@ public class AppCache {
     /** total used space */
     private static final long MAX_SPACE = 1024 * 1024;
     private static final long MAX_AGE = 12 * 60 * 60 * 1000l;
+    /** rough size of an index entry */
+    private static final int ENTRY_SIZE = 64;
 
     public static AppCache getInstance(Context ctx) {
         synchronized (AppCache.class) {
@@ -63,8 +66,28 @@ public class AppCache {
         Util.d("AppCache cache dir " + _cacheDir);
         _cache = new LHM(MAX_FILES);
         initialize();
+        MemoryGovernor.getInstance().register("App cache index",
+                MemoryGovernor.PRIORITY_INDEX, _trimmer);
     }
 
+    /**
+     *  Reports the size of the index only. The index is the only record
+     *  of the files on disk, so an entry can't be dropped without deleting
+     *  its file, and deleting up to MAX_FILES files on the main thread to
+     *  free ENTRY_SIZE bytes each is not worth it.
+     *
+     *  @since 0.9.45
+     */
+    private final MemoryGovernor.Cache _trimmer = new MemoryGovernor.Cache() {
+        public long getSize() {
+            synchronized(_cache) {
+                return (long) _cache.size() * ENTRY_SIZE;
+            }
+        }
+
+        public void trim(boolean all) {}
+    };
+
     /**
      *  Caller MUST close stream AND call either
      *  addCacheFile() or removeCacheFile() after the data is written.
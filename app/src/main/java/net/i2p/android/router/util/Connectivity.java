@@ -5,6 +5,7 @@ package net.i2p.android.router.util;
 import android.content.Context;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
+import android.support.v4.net.ConnectivityManagerCompat;
 import android.telephony.TelephonyManager;
 
 /**
@@ -64,6 +65,19 @@ public class Connectivity {
                 info.getType() == ConnectivityManager.TYPE_MOBILE);
     }
 
+    /**
+     * Check if the active network is metered. Before API 16, mobile
+     * networks are assumed to be metered.
+     *
+     * @param context the Context.
+     * @return true if data on the active network may cost the user money.
+     * @since 0.9.45
+     */
+    public static boolean isConnectedMetered(Context context) {
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        return ConnectivityManagerCompat.isActiveNetworkMetered(cm);
+    }
+
     /**
      * Check if there is fast connectivity.
      *
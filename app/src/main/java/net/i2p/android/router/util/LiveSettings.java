@@ -0,0 +1,92 @@
+package net.i2p.android.router.util;
+
+import net.i2p.I2PAppContext;
+import net.i2p.android.router.service.StatSummarizer;
+import net.i2p.router.RouterContext;
+import net.i2p.router.TunnelManagerFacade;
+import net.i2p.router.TunnelPoolSettings;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ *  Pushes changed router settings to the subsystems that read them,
+ *  so they take effect without a restart.
+ *  <p/>
+ *  Settings the router reads on each use (share percentage, participating
+ *  tunnel limits, connection limits) need nothing more than the config
+ *  update itself. Keys that do need a restart are listed in
+ *  Util.checkAndCorrectRouterConfig().
+ *
+ *  @since 0.9.45
+ */
+public class LiveSettings {
+    private static final String PREFIX_BANDWIDTH = "i2np.bandwidth.";
+    private static final String PROP_STAT_SUMMARIES = "stat.summaries";
+    private static final String PROP_DEFAULT_LEVEL = "logger.defaultLevel";
+
+    private LiveSettings() {}
+
+    /**
+     *  Call after the new values are in the router config.
+     *
+     *  @param keys the keys that were set or removed
+     */
+    public static void apply(RouterContext ctx, Collection<String> keys) {
+        boolean bandwidth = false;
+        boolean inbound = false;
+        boolean outbound = false;
+        boolean stats = false;
+        for (String key : keys) {
+            if (key.startsWith(PREFIX_BANDWIDTH))
+                bandwidth = true;
+            else if (key.startsWith(TunnelPoolSettings.PREFIX_INBOUND_EXPLORATORY))
+                inbound = true;
+            else if (key.startsWith(TunnelPoolSettings.PREFIX_OUTBOUND_EXPLORATORY))
+                outbound = true;
+            else if (key.equals(PROP_STAT_SUMMARIES))
+                stats = true;
+        }
+
+        if (bandwidth) {
+            ctx.bandwidthLimiter().reinitialize();
+            Util.d("Applied new bandwidth limits");
+        }
+        if (inbound || outbound) {
+            Properties config = new Properties();
+            for (Map.Entry<String, String> e : ctx.router().getConfigMap().entrySet()) {
+                config.setProperty(e.getKey(), e.getValue());
+            }
+            TunnelManagerFacade mgr = ctx.tunnelManager();
+            if (inbound) {
+                TunnelPoolSettings settings = mgr.getInboundSettings();
+                settings.readFromProperties(TunnelPoolSettings.PREFIX_INBOUND_EXPLORATORY, config);
+                mgr.setInboundSettings(settings);
+            }
+            if (outbound) {
+                TunnelPoolSettings settings = mgr.getOutboundSettings();
+                settings.readFromProperties(TunnelPoolSettings.PREFIX_OUTBOUND_EXPLORATORY, config);
+                mgr.setOutboundSettings(settings);
+            }
+            Util.d("Applied new exploratory tunnel settings");
+        }
+        if (stats) {
+            StatSummarizer summarizer = StatSummarizer.instance();
+            if (summarizer != null)
+                summarizer.reconfigure();
+        }
+    }
+
+    /**
+     *  Log settings live in logger.config, not router.config,
+     *  and are saved only if they changed.
+     */
+    public static void applyLogging(I2PAppContext ctx, Properties logSettings) {
+        String defaultLevel = logSettings.getProperty(PROP_DEFAULT_LEVEL);
+        if (defaultLevel != null && !defaultLevel.equals(ctx.logManager().getDefaultLimit())) {
+            ctx.logManager().setDefaultLimit(defaultLevel);
+            ctx.logManager().saveConfig();
+        }
+    }
+}
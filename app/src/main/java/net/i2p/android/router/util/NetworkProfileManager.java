@@ -0,0 +1,185 @@
+package net.i2p.android.router.util;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.preference.PreferenceManager;
+
+import net.i2p.android.router.R;
+import net.i2p.data.DataHelper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ *  Scales bandwidth, participation and connection limits to the
+ *  network the device is on, when enabled in the settings.
+ *  <p/>
+ *  On Wi-Fi (or any unmetered non-mobile network) the user's settings
+ *  are used as-is. On mobile networks they are capped by the profile
+ *  below, tighter when the network is metered. The caps are applied in
+ *  Util.checkAndCorrectRouterConfig(), so saved settings always get them,
+ *  and reapplied to the running router whenever the profile changes.
+ *
+ *  @since 0.9.45
+ */
+public class NetworkProfileManager {
+    public static final int PROFILE_UNRESTRICTED = 0;
+    public static final int PROFILE_MOBILE = 1;
+    public static final int PROFILE_METERED = 2;
+
+    /** keys capped on mobile networks */
+    private static final String[] KEYS = {
+            "i2np.bandwidth.inboundKBytesPerSecond",
+            "i2np.bandwidth.outboundKBytesPerSecond",
+            "router.sharePercentage",
+            "router.maxParticipatingTunnels",
+            "router.inboundPool.quantity",
+            "router.outboundPool.quantity",
+            "i2np.udp.maxConnections",
+            "i2np.ntcp.maxConnections",
+    };
+    private static final int[] MOBILE_CAPS = { 64, 32, 50, 10, 2, 2, 24, 24 };
+    private static final int[] METERED_CAPS = { 32, 16, 10, 5, 1, 1, 16, 16 };
+
+    private static NetworkProfileManager sInstance;
+    /** router_config, which the settings start from */
+    private static Properties sDefaults;
+
+    private Context mCtx;
+    private int mProfile = -1;
+
+    public static synchronized NetworkProfileManager getInstance() {
+        if (sInstance == null)
+            sInstance = new NetworkProfileManager();
+        return sInstance;
+    }
+
+    private NetworkProfileManager() {}
+
+    /**
+     *  Watch for network changes while the router runs.
+     *  Must be called on the main thread.
+     */
+    public synchronized void start(Context ctx) {
+        if (mCtx != null)
+            return;
+        mCtx = ctx.getApplicationContext();
+        mProfile = -1;
+        update(mCtx);
+        mCtx.registerReceiver(mNetworkReceiver,
+                new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    public synchronized void stop() {
+        if (mCtx == null)
+            return;
+        try {
+            mCtx.unregisterReceiver(mNetworkReceiver);
+        } catch (IllegalArgumentException iae) {}
+        mCtx = null;
+    }
+
+    /**
+     *  @return one of the PROFILE constants, PROFILE_UNRESTRICTED if disabled or not connected
+     */
+    public static int getProfile(Context ctx) {
+        if (!PreferenceManager.getDefaultSharedPreferences(ctx).getBoolean(
+                ctx.getString(R.string.PREF_ADAPTIVE_BANDWIDTH), false))
+            return PROFILE_UNRESTRICTED;
+        if (!Connectivity.isConnected(ctx))
+            return PROFILE_UNRESTRICTED;
+        if (Connectivity.isConnectedMetered(ctx))
+            return PROFILE_METERED;
+        if (Connectivity.isConnectedMobile(ctx))
+            return PROFILE_MOBILE;
+        return PROFILE_UNRESTRICTED;
+    }
+
+    /**
+     *  Cap the settings in props for the current profile.
+     *
+     *  @param props router settings from the preferences, modified in place
+     */
+    static void adjust(Context ctx, Properties props) {
+        int[] caps;
+        switch (getProfile(ctx)) {
+            case PROFILE_METERED:
+                caps = METERED_CAPS;
+                break;
+            case PROFILE_MOBILE:
+                caps = MOBILE_CAPS;
+                break;
+            default:
+                return;
+        }
+        Properties defaults = getDefaults(ctx);
+        for (int i = 0; i < KEYS.length; i++) {
+            int value = Integer.MAX_VALUE;
+            try {
+                value = Integer.parseInt(props.getProperty(KEYS[i], defaults.getProperty(KEYS[i])));
+            } catch (NumberFormatException nfe) {}
+            if (value > caps[i])
+                props.setProperty(KEYS[i], Integer.toString(caps[i]));
+        }
+    }
+
+    /**
+     *  The values in router_config, which is merged into router.config
+     *  on install and is what the router uses for anything not set.
+     */
+    static synchronized Properties getDefaults(Context ctx) {
+        if (sDefaults != null)
+            return sDefaults;
+        sDefaults = new Properties();
+        InputStream in = null;
+        try {
+            in = ctx.getResources().openRawResource(R.raw.router_config);
+            DataHelper.loadProps(sDefaults, in);
+        } catch (IOException ioe) {
+            Util.e("Failed to load router_config", ioe);
+        } finally {
+            if (in != null) try { in.close(); } catch (IOException ioe) {}
+        }
+        return sDefaults;
+    }
+
+    private final BroadcastReceiver mNetworkReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            // Keep the current limits while disconnected
+            if (Connectivity.isConnected(context))
+                update(context);
+        }
+    };
+
+    private synchronized void update(Context ctx) {
+        int profile = getProfile(ctx);
+        if (profile == mProfile)
+            return;
+        mProfile = profile;
+
+        List<Properties> lProps = Util.getPropertiesFromPreferences(ctx);
+        Properties props = lProps.get(0);
+        Collection toRemove = lProps.get(1).keySet();
+        Util.checkAndCorrectRouterConfig(ctx, props, toRemove);
+        // Only the settings above can differ from what was last saved,
+        // and only those that do are written
+        RouterConfigStore store = RouterConfigStore.getInstance(ctx);
+        Properties defaults = getDefaults(ctx);
+        Properties changed = new Properties();
+        for (String key : KEYS) {
+            String value = props.getProperty(key, defaults.getProperty(key));
+            if (value == null || value.equals(store.getProperty(key)))
+                continue;
+            changed.setProperty(key, value);
+        }
+        int n = store.apply(changed, null);
+        Util.i("Network profile now " + profile + ", " + n + " settings changed");
+    }
+}
@@ -0,0 +1,346 @@
+package net.i2p.android.router.util;
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+
+import net.i2p.android.router.R;
+import net.i2p.router.RouterContext;
+import net.i2p.router.transport.FIFOBandwidthLimiter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ *  Puts the router into a low power mode while the device is in deep idle,
+ *  when enabled in the settings, and back again on wake.
+ *  <p/>
+ *  Deep idle is Doze on API 23+. On older versions it is the screen having
+ *  been off for DEEP_IDLE_DELAY of real time, including time asleep, checked
+ *  by an alarm and on every broadcast; or at once if the battery is low. Never
+ *  while charging. In low power mode participation is capped, like the
+ *  network profile caps in NetworkProfileManager, and listeners are told
+ *  so they can slow down or stop their own work.
+ *  <p/>
+ *  There is no per-app energy meter, so the savings are reported as the
+ *  time spent in low power mode, the traffic avoided compared to the rate
+ *  just before entering it, and the status updates skipped.
+ *
+ *  @since 0.9.45
+ */
+public class PowerProfileManager {
+    /** screen off this long counts as deep idle before API 23 */
+    private static final long DEEP_IDLE_DELAY = 30*60*1000;
+    private static final String ACTION_DEEP_IDLE = "net.i2p.android.router.DEEP_IDLE";
+    /** how often RouterService normally updates its status */
+    private static final long NORMAL_UPDATE_INTERVAL = 15*1000;
+    /** and in low power mode */
+    public static final long IDLE_UPDATE_INTERVAL = 10*60*1000;
+
+    /** keys capped in low power mode */
+    private static final String[] KEYS = {
+            "router.sharePercentage",
+            "router.maxParticipatingTunnels",
+    };
+    private static final int[] IDLE_CAPS = { 10, 5 };
+
+    private static PowerProfileManager sInstance;
+
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private Context mCtx;
+    private boolean mScreenOff;
+    /** elapsedRealtime() when the screen went off */
+    private long mScreenOffSince;
+    private PendingIntent mDeepIdleAlarm;
+    private boolean mLowPower;
+
+    // savings
+    private long mLowPowerSince;
+    private float mBaselineBps;
+    private long mBytesAtStart;
+    private long mLowPowerTime;
+    private long mBytesSaved;
+    private long mUpdatesSkipped;
+
+    public interface Listener {
+        /**
+         *  Called on the main thread.
+         */
+        void onLowPowerChanged(boolean lowPower);
+    }
+
+    public static synchronized PowerProfileManager getInstance() {
+        if (sInstance == null)
+            sInstance = new PowerProfileManager();
+        return sInstance;
+    }
+
+    private PowerProfileManager() {}
+
+    /**
+     *  Watch the device state while the router runs.
+     *  Must be called on the main thread.
+     */
+    public synchronized void start(Context ctx) {
+        if (mCtx != null)
+            return;
+        mCtx = ctx.getApplicationContext();
+        PowerManager pm = (PowerManager) mCtx.getSystemService(Context.POWER_SERVICE);
+        mScreenOff = !isInteractive(pm);
+        mScreenOffSince = SystemClock.elapsedRealtime();
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_SCREEN_ON);
+        filter.addAction(Intent.ACTION_SCREEN_OFF);
+        filter.addAction(Intent.ACTION_BATTERY_LOW);
+        filter.addAction(Intent.ACTION_BATTERY_OKAY);
+        filter.addAction(Intent.ACTION_POWER_CONNECTED);
+        filter.addAction(Intent.ACTION_POWER_DISCONNECTED);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
+            filter.addAction(PowerManager.ACTION_DEVICE_IDLE_MODE_CHANGED);
+        filter.addAction(ACTION_DEEP_IDLE);
+        mCtx.registerReceiver(mReceiver, filter);
+        mDeepIdleAlarm = PendingIntent.getBroadcast(mCtx, 0,
+                new Intent(ACTION_DEEP_IDLE).setPackage(mCtx.getPackageName()), 0);
+        if (mScreenOff)
+            setDeepIdleAlarm();
+        PreferenceManager.getDefaultSharedPreferences(mCtx)
+                .registerOnSharedPreferenceChangeListener(mPrefListener);
+        // Also clears any caps left from a previous run that was killed in low power mode
+        apply(isDeepIdle());
+    }
+
+    /**
+     *  Leaves the router settings as they are; the next start recalculates them.
+     */
+    public synchronized void stop() {
+        if (mCtx == null)
+            return;
+        try {
+            mCtx.unregisterReceiver(mReceiver);
+        } catch (IllegalArgumentException iae) {}
+        PreferenceManager.getDefaultSharedPreferences(mCtx)
+                .unregisterOnSharedPreferenceChangeListener(mPrefListener);
+        cancelDeepIdleAlarm();
+        if (mLowPower)
+            account();
+        mLowPower = false;
+        mCtx = null;
+        Util.d("Power profile: " + mLowPowerTime / 1000 + " s in low power mode, "
+                + mBytesSaved + " bytes saved, " + mUpdatesSkipped + " updates skipped");
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    public synchronized boolean isLowPower() {
+        return mLowPower;
+    }
+
+    /**
+     *  @return ms spent in low power mode since the app started, including now
+     */
+    public synchronized long getLowPowerTime() {
+        long rv = mLowPowerTime;
+        if (mLowPower)
+            rv += SystemClock.elapsedRealtime() - mLowPowerSince;
+        return rv;
+    }
+
+    /**
+     *  @return estimated bytes not sent or received because of low power mode
+     */
+    public synchronized long getBytesSaved() {
+        return mBytesSaved;
+    }
+
+    /**
+     *  @return RouterService status updates not run because of low power mode
+     */
+    public synchronized long getUpdatesSkipped() {
+        return mUpdatesSkipped;
+    }
+
+    /**
+     *  Cap the settings in props while in low power mode.
+     *
+     *  @param props router settings from the preferences, modified in place
+     */
+    static void adjust(Context ctx, Properties props) {
+        if (!getInstance().isLowPower())
+            return;
+        Properties defaults = NetworkProfileManager.getDefaults(ctx);
+        for (int i = 0; i < KEYS.length; i++) {
+            int value = Integer.MAX_VALUE;
+            try {
+                value = Integer.parseInt(props.getProperty(KEYS[i], defaults.getProperty(KEYS[i])));
+            } catch (NumberFormatException nfe) {}
+            if (value > IDLE_CAPS[i])
+                props.setProperty(KEYS[i], Integer.toString(IDLE_CAPS[i]));
+        }
+    }
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String action = intent.getAction();
+            synchronized (PowerProfileManager.this) {
+                if (mCtx == null)
+                    return;
+                if (Intent.ACTION_SCREEN_OFF.equals(action)) {
+                    mScreenOff = true;
+                    mScreenOffSince = SystemClock.elapsedRealtime();
+                    setDeepIdleAlarm();
+                } else if (Intent.ACTION_SCREEN_ON.equals(action)) {
+                    mScreenOff = false;
+                    cancelDeepIdleAlarm();
+                }
+                update();
+            }
+        }
+    };
+
+    private final SharedPreferences.OnSharedPreferenceChangeListener mPrefListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+        public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+            synchronized (PowerProfileManager.this) {
+                if (mCtx != null && mCtx.getString(R.string.PREF_POWER_SAVING).equals(key))
+                    update();
+            }
+        }
+    };
+
+    /**
+     *  A Handler would count uptime only, and the device is mostly asleep
+     *  with the screen off. Not a wakeup alarm; if the device is asleep
+     *  there is nothing to slow down until it wakes.
+     */
+    private void setDeepIdleAlarm() {
+        AlarmManager am = (AlarmManager) mCtx.getSystemService(Context.ALARM_SERVICE);
+        am.set(AlarmManager.ELAPSED_REALTIME, mScreenOffSince + DEEP_IDLE_DELAY, mDeepIdleAlarm);
+    }
+
+    private void cancelDeepIdleAlarm() {
+        AlarmManager am = (AlarmManager) mCtx.getSystemService(Context.ALARM_SERVICE);
+        am.cancel(mDeepIdleAlarm);
+    }
+
+    private synchronized void update() {
+        if (mCtx == null)
+            return;
+        boolean lowPower = isDeepIdle();
+        if (lowPower != mLowPower)
+            apply(lowPower);
+    }
+
+    private boolean isDeepIdle() {
+        if (!PreferenceManager.getDefaultSharedPreferences(mCtx).getBoolean(
+                mCtx.getString(R.string.PREF_POWER_SAVING), true))
+            return false;
+        Intent battery = mCtx.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0)
+            return false;
+        if (!mScreenOff)
+            return false;
+        PowerManager pm = (PowerManager) mCtx.getSystemService(Context.POWER_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
+            return isDeviceIdle(pm) || isBatteryLow(battery);
+        return SystemClock.elapsedRealtime() - mScreenOffSince >= DEEP_IDLE_DELAY
+               || isBatteryLow(battery);
+    }
+
+    private static boolean isBatteryLow(Intent battery) {
+        if (battery == null)
+            return false;
+        int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        return level >= 0 && scale > 0 && level * 100 / scale <= 15;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static boolean isInteractive(PowerManager pm) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT_WATCH)
+            return pm.isInteractive();
+        return pm.isScreenOn();
+    }
+
+    @TargetApi(Build.VERSION_CODES.M)
+    private static boolean isDeviceIdle(PowerManager pm) {
+        return pm.isDeviceIdleMode();
+    }
+
+    private void apply(boolean lowPower) {
+        if (mLowPower && !lowPower)
+            account();
+        mLowPower = lowPower;
+        RouterContext rCtx = Util.getRouterContext();
+        if (lowPower) {
+            mLowPowerSince = SystemClock.elapsedRealtime();
+            if (rCtx != null) {
+                FIFOBandwidthLimiter bw = rCtx.bandwidthLimiter();
+                mBaselineBps = bw.getSendBps15s() + bw.getReceiveBps15s();
+                mBytesAtStart = bw.getTotalAllocatedInboundBytes() + bw.getTotalAllocatedOutboundBytes();
+            } else {
+                mBaselineBps = 0;
+            }
+        }
+
+        List<Properties> lProps = Util.getPropertiesFromPreferences(mCtx);
+        Properties props = lProps.get(0);
+        Collection toRemove = lProps.get(1).keySet();
+        Util.checkAndCorrectRouterConfig(mCtx, props, toRemove);
+        // Only the settings above can differ from what was last saved.
+        // Keys neither set nor capped are left alone, unless still capped
+        // from before, so the router_config defaults are not pinned.
+        RouterConfigStore store = RouterConfigStore.getInstance(mCtx);
+        Properties defaults = NetworkProfileManager.getDefaults(mCtx);
+        Properties changed = new Properties();
+        for (String key : KEYS) {
+            String value = props.getProperty(key);
+            if (value == null && store.getProperty(key) != null)
+                value = defaults.getProperty(key);
+            if (value != null)
+                changed.setProperty(key, value);
+        }
+        int n = store.apply(changed, null);
+        Util.i("Low power mode " + (lowPower ? "on" : "off") + ", " + n + " settings changed");
+
+        for (Listener listener : mListeners) {
+            listener.onLowPowerChanged(lowPower);
+        }
+    }
+
+    /**
+     *  Add the low power period just ended to the savings.
+     */
+    private void account() {
+        long time = SystemClock.elapsedRealtime() - mLowPowerSince;
+        mLowPowerTime += time;
+        mUpdatesSkipped += time / NORMAL_UPDATE_INTERVAL - time / IDLE_UPDATE_INTERVAL;
+        RouterContext rCtx = Util.getRouterContext();
+        if (rCtx != null && mBaselineBps > 0) {
+            FIFOBandwidthLimiter bw = rCtx.bandwidthLimiter();
+            long used = bw.getTotalAllocatedInboundBytes() + bw.getTotalAllocatedOutboundBytes()
+                    - mBytesAtStart;
+            long expected = (long) (mBaselineBps * time / 1000);
+            if (expected > used)
+                mBytesSaved += expected - used;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package net.i2p.android.router.util;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import net.i2p.data.DataHelper;
+import net.i2p.router.RouterContext;
+import net.i2p.util.OrderedProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ *  Keeps router.config parsed in memory and applies settings to it
+ *  as key-level deltas.
+ *  <p/>
+ *  Changed keys are collected and written in one batch after a short
+ *  delay, so a burst of changes results in a single write. While the
+ *  router is running, it owns the file and the batch is handed to
+ *  Router.saveConfig(); otherwise the file is written here, to a temp
+ *  file that is then renamed over the old one. Changes to a running
+ *  router are then pushed to its subsystems by LiveSettings.
+ *  <p/>
+ *  The resource defaults are merged in once by InitActivities on a new
+ *  install or upgrade, and are not reloaded here.
+ *
+ *  @since 0.9.45
+ */
+public class RouterConfigStore {
+    public static final String CONFIG_FILE = "router.config";
+    private static final long WRITE_DELAY = 1000;
+
+    private static RouterConfigStore sInstance;
+
+    private final File mFile;
+    private final Properties mConfig = new OrderedProperties();
+    /** lastModified of the file when last read or written by us */
+    private long mFileModified = -1;
+    private final Map<String, String> mPendingSet = new HashMap<>();
+    private final Set<String> mPendingRemove = new HashSet<>();
+    private final Handler mHandler;
+
+    public static synchronized RouterConfigStore getInstance(Context ctx) {
+        if (sInstance == null)
+            sInstance = new RouterConfigStore(Util.getFileDir(ctx));
+        return sInstance;
+    }
+
+    private RouterConfigStore(String dir) {
+        mFile = new File(dir, CONFIG_FILE);
+        HandlerThread thread = new HandlerThread("RouterConfig");
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     *  @return the value that will be in effect once pending changes are written
+     */
+    public synchronized String getProperty(String key) {
+        return getProperty(current(), key);
+    }
+
+    private String getProperty(Map<String, String> current, String key) {
+        if (mPendingRemove.contains(key))
+            return null;
+        String rv = mPendingSet.get(key);
+        if (rv != null)
+            return rv;
+        return current.get(key);
+    }
+
+    /**
+     *  Queue the differences between these settings and the current config.
+     *  Keys that already have the given value, or are already absent, are ignored.
+     *
+     *  @param props settings to set
+     *  @param toRemove keys to remove, or null
+     *  @return the number of keys that changed
+     */
+    public synchronized int apply(Properties props, Collection<?> toRemove) {
+        Map<String, String> current = current();
+        int changed = 0;
+        for (String key : props.stringPropertyNames()) {
+            String value = props.getProperty(key);
+            if (value.equals(getProperty(current, key)))
+                continue;
+            mPendingSet.put(key, value);
+            mPendingRemove.remove(key);
+            changed++;
+        }
+        if (toRemove != null) {
+            for (Object o : toRemove) {
+                String key = (String) o;
+                if (getProperty(current, key) == null)
+                    continue;
+                mPendingSet.remove(key);
+                if (current.containsKey(key))
+                    mPendingRemove.add(key);
+                changed++;
+            }
+        }
+        if (changed > 0) {
+            mHandler.removeCallbacks(mWriter);
+            mHandler.postDelayed(mWriter, WRITE_DELAY);
+        }
+        return changed;
+    }
+
+    /**
+     *  Write any pending changes now, blocking.
+     *  Call before starting the router so it reads the latest settings.
+     */
+    public void flush() {
+        mHandler.removeCallbacks(mWriter);
+        write();
+    }
+
+    private final Runnable mWriter = new Runnable() {
+        public void run() {
+            write();
+        }
+    };
+
+    private synchronized void write() {
+        if (mPendingSet.isEmpty() && mPendingRemove.isEmpty())
+            return;
+        RouterContext rCtx = Util.getRouterContext();
+        if (rCtx != null && rCtx.router().isAlive()) {
+            if (rCtx.router().saveConfig(mPendingSet, mPendingRemove))
+                Util.d("Saved " + (mPendingSet.size() + mPendingRemove.size()) +
+                        " changes to running router config");
+            else
+                Util.e("Failed to save router config");
+            // The router config is updated in memory even if the write failed
+            Set<String> changed = new HashSet<>(mPendingSet.keySet());
+            changed.addAll(mPendingRemove);
+            LiveSettings.apply(rCtx, changed);
+            // The router rewrote the file, reload ours when next needed
+            mFileModified = -1;
+        } else {
+            load();
+            mConfig.putAll(mPendingSet);
+            for (String key : mPendingRemove) {
+                mConfig.remove(key);
+            }
+            File tmp = new File(mFile.getPath() + ".tmp");
+            try {
+                DataHelper.storeProps(mConfig, tmp);
+                if (!tmp.renameTo(mFile))
+                    throw new IOException("rename to " + mFile + " failed");
+                mFileModified = mFile.lastModified();
+                Util.d("Saved " + (mPendingSet.size() + mPendingRemove.size()) +
+                        " changes to " + CONFIG_FILE);
+            } catch (IOException ioe) {
+                Util.e("Failed to save " + CONFIG_FILE, ioe);
+                tmp.delete();
+                mFileModified = -1;
+                return;
+            }
+        }
+        mPendingSet.clear();
+        mPendingRemove.clear();
+    }
+
+    /**
+     *  The running router's config if there is one, else our copy of the file.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, String> current() {
+        RouterContext rCtx = Util.getRouterContext();
+        if (rCtx != null && rCtx.router().isAlive())
+            return rCtx.router().getConfigMap();
+        load();
+        return (Map<String, String>) (Map) mConfig;
+    }
+
+    /**
+     *  Reparse the file only if someone else has written it since we last did.
+     */
+    private void load() {
+        long modified = mFile.lastModified();
+        if (modified == mFileModified && mFileModified > 0)
+            return;
+        mConfig.clear();
+        try {
+            DataHelper.loadProps(mConfig, mFile);
+        } catch (IOException ioe) {
+            Util.d("No " + CONFIG_FILE + " yet");
+        }
+        mFileModified = modified;
+    }
+}
@@ -232,6 +232,8 @@ public abstract class Util implements I2PConstants {
     }
 
     // propName -> defaultValue
+    // Only transport settings, read once when the transports start, are here.
+    // Other settings are applied to the running router by LiveSettings.
     private static HashMap<String, Boolean> booleanOptionsRequiringRestart = new HashMap<>();
     private static HashMap<String, String> stringOptionsRequiringRestart = new HashMap<>();
 
@@ -274,6 +276,11 @@ public abstract class Util implements I2PConstants {
         //    props.setProperty(TransportManager.PROP_ENABLE_UPNP, Boolean.toString(false));
         //}
 
+        // Cap bandwidth and participation on mobile networks if enabled
+        NetworkProfileManager.adjust(context, props);
+        // and participation while the device is idle
+        PowerProfileManager.adjust(context, props);
+
         // Now check if a restart is required
         boolean restartRequired = false;
         RouterContext rCtx = getRouterContext();
@@ -335,30 +342,50 @@ public abstract class Util implements I2PConstants {
      */
     public static void mergeResourceToFile(Context ctx, String dir, String file, int resID,
                                            Properties userProps, Collection<String> toRemove) {
+        mergeResourcesToFile(ctx, dir, file, resID > 0 ? new int[] {resID} : new int[0],
+                userProps, toRemove);
+    }
+
+    /**
+     * Load defaults from several resources in order, then add props from settings,
+     * and write back, loading and storing the file only once.
+     *
+     * @param dir       the file directory
+     * @param file      relative to dir
+     * @param resIDs    the IDs of the default resources, may be empty
+     * @param userProps local properties or null
+     * @param toRemove  properties to remove, or null
+     * @since 0.9.45
+     */
+    public static void mergeResourcesToFile(Context ctx, String dir, String file, int[] resIDs,
+                                            Properties userProps, Collection<String> toRemove) {
         InputStream fin = null;
         InputStream in = null;
+        boolean fromResource = resIDs.length > 0;
 
         try {
             Properties props = new OrderedProperties();
             try {
                 fin = new FileInputStream(new File(dir, file));
                 DataHelper.loadProps(props, fin);
-                if (resID > 0)
+                if (fromResource)
                     Util.d("Merging resource into file " + file);
                 else
                     Util.d("Merging properties into file " + file);
             } catch (IOException ioe) {
-                if (resID > 0)
+                if (fromResource)
                     Util.d("Creating file " + file + " from resource");
                 else
                     Util.d("Creating file " + file + " from properties");
             }
 
             // write in default settings
-            if (resID > 0)
+            for (int resID : resIDs) {
                 in = ctx.getResources().openRawResource(resID);
-            if (in != null)
                 DataHelper.loadProps(props, in);
+                in.close();
+                in = null;
+            }
 
             // override with user settings
             if (userProps != null)
@@ -0,0 +1,242 @@
+package net.i2p.android.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import net.i2p.android.router.util.Util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  One timer for all the app's periodic work.
+ *  <p/>
+ *  Run times are rounded up to a multiple of TICK, so tasks with
+ *  different periods fall due together and share one wakeup, and there
+ *  are no wakeups at all while nothing is due. Tasks run either on the
+ *  main thread or on a small pool of background workers, which only has
+ *  threads while something is running. A task is not started again
+ *  while its previous run is still going.
+ *  <p/>
+ *  Tasks flagged UI_ONLY are suspended while no activity is visible.
+ *
+ *  @since 0.9.45
+ */
+public class AppScheduler {
+    /** Run times are aligned to this */
+    public static final long TICK = 500;
+
+    /** Run on the main thread instead of a background worker */
+    public static final int FLAG_MAIN_THREAD = 1;
+    /** Only run while an activity is visible */
+    public static final int FLAG_UI_ONLY = 2;
+
+    private static final int MAX_WORKERS = 4;
+
+    private static AppScheduler sInstance;
+
+    private final ScheduledExecutorService mTimer;
+    private final ThreadPoolExecutor mWorkers;
+    private final Handler mMainHandler;
+    private final List<Task> mTasks = new ArrayList<>();
+    private ScheduledFuture<?> mNextTick;
+    private long mNextTickAt;
+    private int mVisibleActivities;
+
+    public static synchronized AppScheduler getInstance() {
+        if (sInstance == null)
+            sInstance = new AppScheduler();
+        return sInstance;
+    }
+
+    private AppScheduler() {
+        mTimer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("AppScheduler"));
+        mWorkers = new ThreadPoolExecutor(MAX_WORKERS, MAX_WORKERS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("AppWorker"));
+        mWorkers.allowCoreThreadTimeOut(true);
+        mMainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     *  A scheduled periodic task.
+     */
+    public class Task {
+        private final Runnable mRunnable;
+        private final int mFlags;
+        private long mPeriod;
+        private long mNextRun;
+        private boolean mRunning;
+        private boolean mCancelled;
+
+        private Task(Runnable runnable, long period, int flags) {
+            mRunnable = runnable;
+            mPeriod = period;
+            mFlags = flags;
+        }
+
+        /**
+         *  Takes effect from the next run.
+         */
+        public void setPeriod(long period) {
+            synchronized (AppScheduler.this) {
+                mPeriod = period;
+                long next = align(SystemClock.elapsedRealtime() + period);
+                if (next < mNextRun) {
+                    mNextRun = next;
+                    reschedule();
+                }
+            }
+        }
+
+        /**
+         *  Run at the next tick instead of waiting for the period.
+         */
+        public void runNow() {
+            synchronized (AppScheduler.this) {
+                mNextRun = 0;
+                reschedule();
+            }
+        }
+
+        public void cancel() {
+            synchronized (AppScheduler.this) {
+                mCancelled = true;
+                mTasks.remove(this);
+                reschedule();
+            }
+        }
+
+        private boolean isSuspended() {
+            return (mFlags & FLAG_UI_ONLY) != 0 && mVisibleActivities == 0;
+        }
+
+        private final Runnable mWrapper = new Runnable() {
+            public void run() {
+                try {
+                    if (!mCancelled)
+                        mRunnable.run();
+                } catch (RuntimeException re) {
+                    Util.e("Error in scheduled task " + mRunnable, re);
+                } finally {
+                    synchronized (AppScheduler.this) {
+                        mRunning = false;
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     *  @param initialDelay ms before the first run, rounded up to a tick
+     *  @param period ms between runs, rounded up to a tick
+     *  @param flags FLAG_MAIN_THREAD and/or FLAG_UI_ONLY, or 0
+     *  @return the task, to cancel it
+     */
+    public synchronized Task schedule(Runnable runnable, long initialDelay, long period, int flags) {
+        Task task = new Task(runnable, period, flags);
+        task.mNextRun = align(SystemClock.elapsedRealtime() + initialDelay);
+        mTasks.add(task);
+        reschedule();
+        return task;
+    }
+
+    /**
+     *  Run once, as soon as possible, on a background worker.
+     */
+    public void execute(Runnable runnable) {
+        mWorkers.execute(runnable);
+    }
+
+    /**
+     *  Call from every activity's onStart().
+     */
+    public synchronized void onActivityStarted() {
+        if (mVisibleActivities++ == 0)
+            reschedule();
+    }
+
+    /**
+     *  Call from every activity's onStop().
+     */
+    public synchronized void onActivityStopped() {
+        if (mVisibleActivities > 0)
+            mVisibleActivities--;
+    }
+
+    public synchronized boolean isUiVisible() {
+        return mVisibleActivities > 0;
+    }
+
+    private static long align(long time) {
+        return (time + TICK - 1) / TICK * TICK;
+    }
+
+    /**
+     *  Make sure the timer fires at the earliest due time of the active tasks.
+     */
+    private void reschedule() {
+        long next = Long.MAX_VALUE;
+        for (Task task : mTasks) {
+            if (!task.isSuspended() && task.mNextRun < next)
+                next = task.mNextRun;
+        }
+        if (mNextTick != null) {
+            if (next == mNextTickAt)
+                return;
+            mNextTick.cancel(false);
+            mNextTick = null;
+        }
+        if (next == Long.MAX_VALUE)
+            return;
+        mNextTickAt = next;
+        long delay = Math.max(0, next - SystemClock.elapsedRealtime());
+        mNextTick = mTimer.schedule(mTick, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private final Runnable mTick = new Runnable() {
+        public void run() {
+            synchronized (AppScheduler.this) {
+                mNextTick = null;
+                // a little early counts as due, they are all on the same tick
+                long now = SystemClock.elapsedRealtime() + TICK / 2;
+                for (Task task : mTasks) {
+                    if (task.isSuspended() || task.mNextRun > now)
+                        continue;
+                    task.mNextRun = align(now + task.mPeriod);
+                    if (task.mRunning)
+                        continue;
+                    task.mRunning = true;
+                    if ((task.mFlags & FLAG_MAIN_THREAD) != 0)
+                        mMainHandler.post(task.mWrapper);
+                    else
+                        mWorkers.execute(task.mWrapper);
+                }
+                reschedule();
+            }
+        }
+    };
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String mName;
+        private int mCount;
+
+        NamedThreadFactory(String name) {
+            mName = name;
+        }
+
+        public synchronized Thread newThread(Runnable r) {
+            Thread t = new Thread(r, mName + ' ' + (++mCount));
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        }
+    }
+}
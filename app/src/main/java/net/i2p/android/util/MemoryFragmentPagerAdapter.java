@@ -14,6 +14,9 @@ public abstract class MemoryFragmentPagerAdapter extends FragmentPagerAdapter {
         super(fm);
         mFragmentManager = fm;
         mFragmentTags = new SparseArray<>();
+        // held weakly, goes with the adapter
+        MemoryGovernor.getInstance().register("Pager fragment tags",
+                MemoryGovernor.PRIORITY_UI, mTrimmer);
     }
 
     @Override
@@ -34,4 +37,20 @@ public abstract class MemoryFragmentPagerAdapter extends FragmentPagerAdapter {
             return null;
         return mFragmentManager.findFragmentByTag(tag);
     }
+
+    /**
+     *  Forgets the tags of fragments that no longer exist.
+     */
+    private final MemoryGovernor.Cache mTrimmer = new MemoryGovernor.Cache() {
+        public long getSize() {
+            return mFragmentTags.size() * 64L;
+        }
+
+        public void trim(boolean all) {
+            for (int i = mFragmentTags.size() - 1; i >= 0; i--) {
+                if (mFragmentManager.findFragmentByTag(mFragmentTags.valueAt(i)) == null)
+                    mFragmentTags.removeAt(i);
+            }
+        }
+    };
 }
@@ -0,0 +1,176 @@
+package net.i2p.android.util;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+
+import net.i2p.android.router.util.Util;
+
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ *  Sheds the app's caches when the system is short of memory, so the
+ *  router process is less likely to be killed.
+ *  <p/>
+ *  Caches register with a priority, and are trimmed lowest priority
+ *  first, more of them the worse the trim level. Caches are held weakly,
+ *  so one that is not unregistered does not leak its owner.
+ *  Trimming is done on the main thread.
+ *
+ *  @since 0.9.45
+ */
+public class MemoryGovernor implements ComponentCallbacks2 {
+    /** Lists loaded for a screen, reloaded when it is shown again */
+    public static final int PRIORITY_UI = 0;
+    /** History collected while running, lost if shed */
+    public static final int PRIORITY_HISTORY = 1;
+    /** Indexes that are slow to rebuild */
+    public static final int PRIORITY_INDEX = 2;
+
+    private static MemoryGovernor sInstance;
+
+    private final List<Entry> mCaches = new CopyOnWriteArrayList<>();
+    private Context mCtx;
+
+    public interface Cache {
+        /**
+         *  @return an estimate of the memory used, in bytes
+         */
+        long getSize();
+
+        /**
+         *  Called on the main thread, one cache after another, so it must
+         *  be cheap: free memory only, no disk or network I/O.
+         *
+         *  @param all shed everything that can be shed, not just some
+         */
+        void trim(boolean all);
+    }
+
+    private static class Entry {
+        final String name;
+        final int priority;
+        final WeakReference<Cache> cache;
+
+        Entry(String name, int priority, Cache cache) {
+            this.name = name;
+            this.priority = priority;
+            this.cache = new WeakReference<>(cache);
+        }
+    }
+
+    public static synchronized MemoryGovernor getInstance() {
+        if (sInstance == null)
+            sInstance = new MemoryGovernor();
+        return sInstance;
+    }
+
+    private MemoryGovernor() {}
+
+    /**
+     *  Start receiving the system's memory signals. Only the first call does anything.
+     */
+    public synchronized void attach(Context ctx) {
+        if (mCtx != null)
+            return;
+        mCtx = ctx.getApplicationContext();
+        mCtx.registerComponentCallbacks(this);
+    }
+
+    /**
+     *  @param name shown in the UI; caches with the same name are added together
+     *  @param priority one of the PRIORITY constants
+     */
+    public void register(String name, int priority, Cache cache) {
+        mCaches.add(new Entry(name, priority, cache));
+    }
+
+    public void unregister(Cache cache) {
+        for (Entry e : mCaches) {
+            Cache c = e.cache.get();
+            if (c == null || c == cache)
+                mCaches.remove(e);
+        }
+    }
+
+    /**
+     *  @return estimated bytes used by each cache name, highest priority first
+     */
+    public Map<String, Long> getFootprint() {
+        Map<String, Long> rv = new LinkedHashMap<>();
+        for (int p = PRIORITY_INDEX; p >= PRIORITY_UI; p--) {
+            for (Entry e : mCaches) {
+                Cache c = e.cache.get();
+                if (c == null || e.priority != p)
+                    continue;
+                Long old = rv.get(e.name);
+                rv.put(e.name, c.getSize() + (old != null ? old : 0));
+            }
+        }
+        return rv;
+    }
+
+    /**
+     *  @return estimated total bytes used by all caches
+     */
+    public long getTotalSize() {
+        long rv = 0;
+        for (Long size : getFootprint().values()) {
+            rv += size;
+        }
+        return rv;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        // History is only lost on the worse levels, and only
+        // partly while the app is in use
+        if (level >= TRIM_MEMORY_COMPLETE)
+            shed(PRIORITY_INDEX, true, level);
+        else if (level >= TRIM_MEMORY_MODERATE)
+            shed(PRIORITY_INDEX, false, level);
+        else if (level >= TRIM_MEMORY_BACKGROUND)
+            shed(PRIORITY_HISTORY, false, level);
+        else if (level >= TRIM_MEMORY_UI_HIDDEN)
+            shed(PRIORITY_UI, true, level);
+        else if (level >= TRIM_MEMORY_RUNNING_CRITICAL)
+            shed(PRIORITY_HISTORY, false, level);
+        else if (level >= TRIM_MEMORY_RUNNING_LOW)
+            shed(PRIORITY_UI, true, level);
+        else
+            shed(PRIORITY_UI, false, level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        shed(PRIORITY_INDEX, true, TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {}
+
+    /**
+     *  @param priority caches below this are shed fully, at it partly
+     *  @param all shed the caches at the priority fully too
+     */
+    private void shed(int priority, boolean all, int level) {
+        long before = getTotalSize();
+        for (int p = PRIORITY_UI; p <= priority; p++) {
+            for (Entry e : mCaches) {
+                Cache c = e.cache.get();
+                if (c == null) {
+                    mCaches.remove(e);
+                    continue;
+                }
+                if (e.priority == p)
+                    c.trim(all || p < priority);
+            }
+        }
+        Util.d("Trim memory level " + level + ": caches went from " + before +
+                " to " + getTotalSize() + " bytes");
+    }
+}
@@ -0,0 +1,76 @@
+package net.i2p.android.widget;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.support.v4.content.ContextCompat;
+import android.util.AttributeSet;
+import android.view.View;
+
+import net.i2p.android.router.R;
+
+/**
+ * A minimal line graph without axes, scaled to the largest value shown.
+ *
+ * @since 0.9.45
+ */
+public class SparklineView extends View {
+    private final Paint mPaint;
+    private final Path mPath = new Path();
+    private float[] mValues = new float[0];
+    private int mCount;
+
+    public SparklineView(Context context) {
+        this(context, null);
+    }
+
+    public SparklineView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mPaint.setStyle(Paint.Style.STROKE);
+        mPaint.setStrokeWidth(2 * getResources().getDisplayMetrics().density);
+        mPaint.setColor(ContextCompat.getColor(context, R.color.accent));
+    }
+
+    /**
+     * @param values oldest first, not copied
+     * @param count the number of values to use
+     */
+    public void setValues(float[] values, int count) {
+        mValues = values;
+        mCount = count;
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mCount < 2)
+            return;
+
+        float max = 0;
+        for (int i = 0; i < mCount; i++) {
+            if (mValues[i] > max)
+                max = mValues[i];
+        }
+
+        float stroke = mPaint.getStrokeWidth();
+        float left = getPaddingLeft();
+        float top = getPaddingTop() + stroke;
+        float width = getWidth() - getPaddingLeft() - getPaddingRight();
+        float height = getHeight() - getPaddingTop() - getPaddingBottom() - 2 * stroke;
+        float step = width / (mCount - 1);
+
+        mPath.rewind();
+        for (int i = 0; i < mCount; i++) {
+            float x = left + i * step;
+            float y = top + height - (max > 0 ? mValues[i] / max * height : 0);
+            if (i == 0)
+                mPath.moveTo(x, y);
+            else
+                mPath.lineTo(x, y);
+        }
+        canvas.drawPath(mPath, mPaint);
+    }
+}
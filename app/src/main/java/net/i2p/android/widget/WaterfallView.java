@@ -0,0 +1,79 @@
+package net.i2p.android.widget;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.support.v4.content.ContextCompat;
+import android.util.AttributeSet;
+import android.view.View;
+
+import net.i2p.android.router.R;
+
+/**
+ * Shows consecutive phases as one bar per row, each starting where the
+ * previous phase ended, labelled with the phase name and end time.
+ *
+ * @since 0.9.45
+ */
+public class WaterfallView extends View {
+    private final Paint mBarPaint;
+    private final Paint mTextPaint;
+    private final float mRowHeight;
+    private String[] mLabels = new String[0];
+    private long[] mEnds = new long[0];
+    private long mScale;
+
+    public WaterfallView(Context context) {
+        this(context, null);
+    }
+
+    public WaterfallView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        float density = getResources().getDisplayMetrics().density;
+        mRowHeight = 20 * density;
+        mBarPaint = new Paint();
+        mBarPaint.setColor(ContextCompat.getColor(context, R.color.primary_light));
+        mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mTextPaint.setTextSize(12 * getResources().getDisplayMetrics().scaledDensity);
+        mTextPaint.setColor(ContextCompat.getColor(context, R.color.primary_text_default_material_light));
+    }
+
+    /**
+     * @param labels phase names, in order
+     * @param ends ms from the start at which each phase ended
+     * @param scale ms represented by the full width, so rows can be compared
+     */
+    public void setPhases(String[] labels, long[] ends, long scale) {
+        mLabels = labels;
+        mEnds = ends;
+        mScale = Math.max(scale, 1);
+        requestLayout();
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int height = (int) (mLabels.length * mRowHeight) + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec),
+                resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        float left = getPaddingLeft();
+        float width = getWidth() - getPaddingLeft() - getPaddingRight();
+        float top = getPaddingTop();
+        float gap = mRowHeight / 8;
+        long start = 0;
+        for (int i = 0; i < mLabels.length; i++) {
+            float x0 = left + width * start / mScale;
+            float x1 = left + width * mEnds[i] / mScale;
+            float y = top + i * mRowHeight;
+            canvas.drawRect(x0, y + gap, Math.max(x1, x0 + 1), y + mRowHeight - gap, mBarPaint);
+            canvas.drawText(mLabels[i] + "  " + mEnds[i] + " ms", left,
+                    y + mRowHeight - 2 * gap - mTextPaint.descent(), mTextPaint);
+            start = mEnds[i];
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package net.i2p.router.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.Executor;
+
+import net.i2p.data.i2cp.I2CPMessage;
+import net.i2p.data.i2cp.I2CPMessageException;
+import net.i2p.data.i2cp.I2CPMessageHandler;
+import net.i2p.router.RouterContext;
+
+/**
+ * ClientConnectionRunner for a domain socket that is serviced by a shared
+ * DomainClientEventLoop, instead of its own reader and writer threads.
+ * Messages are decoded on the poll thread and handled in order on the
+ * loop's dispatcher pool, since handling them can block in ClientManager.
+ *
+ * @since 0.9.45
+ */
+class DomainClientConnectionRunner extends ClientConnectionRunner
+        implements DomainClientEventLoop.Handler {
+    private final Socket _sock;
+    private final FileDescriptor _fd;
+    private final DomainClientEventLoop _loop;
+    private volatile DomainClientEventLoop.Connection _conn;
+    private ClientMessageEventListener _listener;
+    private Executor _dispatcher;
+
+    public DomainClientConnectionRunner(RouterContext context, ClientManager manager,
+                                        Socket socket, FileDescriptor fd,
+                                        DomainClientEventLoop loop) {
+        super(context, manager, socket);
+        _sock = socket;
+        _fd = fd;
+        _loop = loop;
+    }
+
+    /**
+     * Register with the event loop. No threads are started.
+     *
+     * @throws IOException
+     */
+    @Override
+    public synchronized void startRunning() throws IOException {
+        if (_conn != null)
+            throw new IllegalStateException();
+        _listener = new ClientMessageEventListener(_context, this, true);
+        _dispatcher = _loop.newSerialExecutor();
+        _conn = _loop.register(_fd, _sock.getInputStream(), _sock.getOutputStream(), this);
+    }
+
+    @Override
+    synchronized void stopRunning() {
+        DomainClientEventLoop.Connection conn = _conn;
+        if (conn != null)
+            _loop.unregister(conn);
+        super.stopRunning();
+    }
+
+    /**
+     * Serialize the message and queue it on the event loop.
+     * Does not block.
+     */
+    @Override
+    void doSend(I2CPMessage msg) throws I2CPMessageException {
+        DomainClientEventLoop.Connection conn = _conn;
+        if (conn == null || conn.isClosed())
+            throw new I2CPMessageException("Connection is not running");
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+        try {
+            msg.writeMessage(baos);
+            conn.send(baos.toByteArray());
+        } catch (IOException ioe) {
+            throw new I2CPMessageException("Error sending message", ioe);
+        }
+    }
+
+    // DomainClientEventLoop.Handler
+
+    public void frameReceived(byte[] frame, int offset, int length) {
+        final I2CPMessage msg;
+        try {
+            msg = I2CPMessageHandler.readMessage(new ByteArrayInputStream(frame, offset, length));
+        } catch (I2CPMessageException | IOException e) {
+            readError(e);
+            return;
+        }
+        _dispatcher.execute(new Runnable() {
+            public void run() {
+                _listener.messageReceived(null, msg);
+            }
+        });
+    }
+
+    public void disconnected(final IOException cause) {
+        if (cause != null) {
+            readError(cause);
+        } else {
+            _dispatcher.execute(new Runnable() {
+                public void run() {
+                    _listener.disconnected(null);
+                }
+            });
+        }
+    }
+
+    private void readError(final Exception e) {
+        _dispatcher.execute(new Runnable() {
+            public void run() {
+                _listener.readError(null, e);
+            }
+        });
+    }
+}
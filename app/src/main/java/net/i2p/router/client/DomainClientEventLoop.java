@@ -0,0 +1,511 @@
+package net.i2p.router.client;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructPollfd;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.i2p.I2PAppContext;
+import net.i2p.util.I2PThread;
+import net.i2p.util.Log;
+
+/**
+ * Services any number of local I2CP connections from a fixed set of threads.
+ * <p/>
+ * A single thread poll()s every registered domain socket, reassembles I2CP
+ * frames (4 byte length, 1 byte type, body) and hands complete frames to the
+ * connection's Handler. Outbound frames are queued per connection and written
+ * by a small shared pool, so a slow client cannot stall the poll thread or the
+ * router thread that sent the message. Handlers that need to do real work
+ * with a frame pass it to a SerialExecutor, which runs it on a small shared
+ * dispatcher pool in order per connection, so a handler that blocks holds up
+ * its own connection and one dispatcher, not the poll thread.
+ * <p/>
+ * Compared to ClientConnectionRunner, which uses a reader and a writer thread
+ * per client, the thread count here does not grow with the number of clients;
+ * it is at most 1 + WRITER_THREADS + DISPATCHER_THREADS.
+ * <p/>
+ * Requires android.system.Os, i.e. API 21 or higher.
+ *
+ * @since 0.9.45
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+class DomainClientEventLoop implements Runnable {
+    /** 4 byte length + 1 byte type */
+    static final int HEADER_SIZE = 5;
+    /** Larger than any valid I2CP message */
+    static final int MAX_FRAME_SIZE = 128 * 1024;
+    static final int WRITER_THREADS = 2;
+    static final int DISPATCHER_THREADS = 4;
+    /** idle pool threads exit after this long */
+    private static final long KEEP_ALIVE = 60 * 1000;
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+
+    private final Log _log;
+    private final String _name;
+    private final List<Connection> _connections;
+    private final ThreadPoolExecutor _writers;
+    private final AtomicInteger _writerCount = new AtomicInteger();
+    private final ThreadPoolExecutor _dispatchers;
+    private final AtomicInteger _dispatcherCount = new AtomicInteger();
+    private final byte[] _wakeBuf = new byte[64];
+    private FileDescriptor _wakeRead;
+    private FileDescriptor _wakeWrite;
+    private volatile boolean _running;
+    private volatile boolean _pollSetChanged = true;
+    private StructPollfd[] _pollSet;
+    private Thread _thread;
+
+    /**
+     * Receives the events for a single connection.
+     * Methods are called from the poll thread, and must not block;
+     * anything that might should go through a SerialExecutor.
+     */
+    interface Handler {
+        /**
+         * @param frame  buffer containing one complete frame, header included
+         * @param offset start of the frame in the buffer
+         * @param length HEADER_SIZE + length of the body
+         */
+        void frameReceived(byte[] frame, int offset, int length);
+
+        /**
+         * The connection has been removed from the loop.
+         *
+         * @param cause null if the peer closed the connection cleanly
+         */
+        void disconnected(IOException cause);
+    }
+
+    /**
+     * A registered connection.
+     */
+    class Connection {
+        final FileDescriptor fd;
+        final InputStream in;
+        final OutputStream out;
+        final Handler handler;
+        private final Queue<byte[]> _outbound = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean _writeScheduled = new AtomicBoolean();
+        private volatile boolean _closed;
+        private byte[] _buf = new byte[INITIAL_BUFFER_SIZE];
+        private int _count;
+
+        Connection(FileDescriptor fd, InputStream in, OutputStream out, Handler handler) {
+            this.fd = fd;
+            this.in = in;
+            // A DomainSocket stream already coalesces writes until flush()
+            this.out = out;
+            this.handler = handler;
+        }
+
+        /**
+         * Queue a complete frame for sending. Does not block.
+         */
+        void send(byte[] frame) throws IOException {
+            if (_closed)
+                throw new IOException("Connection closed");
+            _outbound.offer(frame);
+            scheduleWrite();
+        }
+
+        boolean isClosed() {
+            return _closed;
+        }
+
+        private void scheduleWrite() {
+            if (_writeScheduled.compareAndSet(false, true)) {
+                try {
+                    _writers.execute(_writeTask);
+                } catch (RuntimeException re) {
+                    // pool shut down
+                    _writeScheduled.set(false);
+                }
+            }
+        }
+
+        private final Runnable _writeTask = new Runnable() {
+            public void run() {
+                try {
+                    byte[] frame;
+                    while ((frame = _outbound.poll()) != null) {
+                        out.write(frame);
+                    }
+                    out.flush();
+                } catch (IOException ioe) {
+                    close(Connection.this, ioe);
+                    return;
+                } finally {
+                    _writeScheduled.set(false);
+                }
+                // Catch anything queued between the last poll() and the reset
+                if (!_outbound.isEmpty() && !_closed)
+                    scheduleWrite();
+            }
+        };
+
+        /**
+         * Read everything available and dispatch any complete frames.
+         * Only called from the poll thread.
+         *
+         * @return false if the connection was closed
+         */
+        private boolean readAvailable(int revents) throws IOException {
+            int avail = in.available();
+            if (avail <= 0) {
+                // Readable with nothing available means EOF
+                if ((revents & OsConstants.POLLIN) == 0)
+                    return false;
+                int b = in.read();
+                if (b < 0)
+                    return false;
+                ensureCapacity(1);
+                _buf[_count++] = (byte) b;
+            } else {
+                ensureCapacity(avail);
+                int read = in.read(_buf, _count, avail);
+                if (read < 0)
+                    return false;
+                _count += read;
+            }
+            dispatchFrames();
+            return true;
+        }
+
+        private void dispatchFrames() throws IOException {
+            int off = 0;
+            while (_count - off >= HEADER_SIZE) {
+                int bodyLen = ((_buf[off] & 0xff) << 24) |
+                        ((_buf[off + 1] & 0xff) << 16) |
+                        ((_buf[off + 2] & 0xff) << 8) |
+                        (_buf[off + 3] & 0xff);
+                if (bodyLen < 0 || bodyLen > MAX_FRAME_SIZE - HEADER_SIZE)
+                    throw new IOException("Bad I2CP frame length " + bodyLen);
+                int frameLen = HEADER_SIZE + bodyLen;
+                if (_count - off < frameLen) {
+                    ensureCapacity(frameLen - (_count - off));
+                    break;
+                }
+                handler.frameReceived(_buf, off, frameLen);
+                off += frameLen;
+            }
+            if (off > 0) {
+                _count -= off;
+                System.arraycopy(_buf, off, _buf, 0, _count);
+            }
+        }
+
+        private void ensureCapacity(int extra) {
+            int needed = _count + extra;
+            if (needed > _buf.length) {
+                int size = _buf.length;
+                while (size < needed)
+                    size *= 2;
+                byte[] buf = new byte[size];
+                System.arraycopy(_buf, 0, buf, 0, _count);
+                _buf = buf;
+            }
+        }
+    }
+
+    /**
+     * Runs tasks one at a time, in the order given, on the shared dispatcher pool.
+     * Nothing is held on the pool while there are no tasks, and a connection
+     * never uses more than one dispatcher at a time.
+     */
+    class SerialExecutor implements Executor {
+        private final Queue<Runnable> _tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean _scheduled = new AtomicBoolean();
+
+        public void execute(Runnable task) {
+            _tasks.offer(task);
+            schedule();
+        }
+
+        private void schedule() {
+            if (_scheduled.compareAndSet(false, true)) {
+                try {
+                    _dispatchers.execute(_drainTask);
+                } catch (RejectedExecutionException ree) {
+                    // pool shut down, still deliver e.g. the disconnect
+                    _drainTask.run();
+                }
+            }
+        }
+
+        private final Runnable _drainTask = new Runnable() {
+            public void run() {
+                try {
+                    Runnable task;
+                    while ((task = _tasks.poll()) != null) {
+                        try {
+                            task.run();
+                        } catch (RuntimeException re) {
+                            _log.error("I2CP message handler failed", re);
+                        }
+                    }
+                } finally {
+                    _scheduled.set(false);
+                }
+                // Catch anything queued between the last poll() and the reset
+                if (!_tasks.isEmpty())
+                    schedule();
+            }
+        };
+    }
+
+    /**
+     * @param name used for thread names
+     */
+    DomainClientEventLoop(I2PAppContext context, String name) {
+        _log = context.logManager().getLog(DomainClientEventLoop.class);
+        _name = name;
+        _connections = new CopyOnWriteArrayList<>();
+        _writers = newPool(WRITER_THREADS, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new I2PThread(r, _name + " Writer " + _writerCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        _dispatchers = newPool(DISPATCHER_THREADS, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new I2PThread(r, _name + " Dispatcher " + _dispatcherCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * A fixed size pool whose threads exit when idle.
+     */
+    private static ThreadPoolExecutor newPool(int threads, ThreadFactory factory) {
+        ThreadPoolExecutor rv = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), factory);
+        rv.allowCoreThreadTimeOut(true);
+        return rv;
+    }
+
+    /**
+     * @return a new executor for the messages of one connection
+     */
+    SerialExecutor newSerialExecutor() {
+        return new SerialExecutor();
+    }
+
+    /**
+     * Start the poll thread.
+     *
+     * @throws IOException if the wakeup pipe could not be created
+     */
+    synchronized void start() throws IOException {
+        if (_running)
+            return;
+        try {
+            FileDescriptor[] pipe = Os.pipe();
+            _wakeRead = pipe[0];
+            _wakeWrite = pipe[1];
+        } catch (ErrnoException ee) {
+            throw new IOException("Cannot create wakeup pipe: " + ee.getMessage());
+        }
+        _running = true;
+        _thread = new I2PThread(this, _name + " Poller", true);
+        _thread.start();
+    }
+
+    /**
+     * Stop the poll thread and the writers, closing every registered connection.
+     */
+    synchronized void stop() {
+        if (!_running)
+            return;
+        _running = false;
+        wakeup();
+        for (Connection c : _connections) {
+            close(c, null);
+        }
+        _writers.shutdown();
+        _dispatchers.shutdown();
+    }
+
+    boolean isRunning() {
+        return _running;
+    }
+
+    int getConnectionCount() {
+        return _connections.size();
+    }
+
+    /**
+     * @return the number of live threads, regardless of the number of connections
+     */
+    int getThreadCount() {
+        return 1 + _writers.getPoolSize() + _dispatchers.getPoolSize();
+    }
+
+    /**
+     * Start servicing a connection.
+     *
+     * @param fd the file descriptor to poll
+     * @param in the stream for fd
+     * @param out the stream for fd
+     */
+    Connection register(FileDescriptor fd, InputStream in, OutputStream out, Handler handler)
+            throws IOException {
+        if (!_running)
+            throw new IOException("Event loop not running");
+        Connection c = new Connection(fd, in, out, handler);
+        _connections.add(c);
+        _pollSetChanged = true;
+        wakeup();
+        if (_log.shouldDebug())
+            _log.debug("Registered connection, now servicing " + _connections.size());
+        return c;
+    }
+
+    /**
+     * Stop servicing a connection. Does not call the Handler.
+     * The caller is responsible for closing the socket.
+     */
+    void unregister(Connection c) {
+        c._closed = true;
+        if (_connections.remove(c)) {
+            _pollSetChanged = true;
+            wakeup();
+        }
+    }
+
+    /**
+     * Unregister and notify the Handler, at most once per connection.
+     */
+    private void close(Connection c, IOException cause) {
+        synchronized (c) {
+            if (c._closed)
+                return;
+            c._closed = true;
+        }
+        if (_connections.remove(c))
+            _pollSetChanged = true;
+        if (cause != null && _log.shouldInfo())
+            _log.info("Domain socket connection failed", cause);
+        c.handler.disconnected(cause);
+    }
+
+    private void wakeup() {
+        FileDescriptor fd = _wakeWrite;
+        if (fd == null)
+            return;
+        try {
+            Os.write(fd, _wakeBuf, 0, 1);
+        } catch (ErrnoException ee) {
+            _log.warn("Cannot wake up event loop", ee);
+        } catch (InterruptedIOException iioe) {
+            _log.warn("Cannot wake up event loop", iioe);
+        }
+    }
+
+    private StructPollfd[] getPollSet() {
+        if (_pollSetChanged || _pollSet == null) {
+            _pollSetChanged = false;
+            Object[] conns = _connections.toArray();
+            StructPollfd[] fds = new StructPollfd[conns.length + 1];
+            fds[0] = new StructPollfd();
+            fds[0].fd = _wakeRead;
+            fds[0].events = (short) OsConstants.POLLIN;
+            for (int i = 0; i < conns.length; i++) {
+                Connection c = (Connection) conns[i];
+                StructPollfd pfd = new StructPollfd();
+                pfd.fd = c.fd;
+                pfd.events = (short) OsConstants.POLLIN;
+                pfd.userData = c;
+                fds[i + 1] = pfd;
+            }
+            _pollSet = fds;
+        }
+        return _pollSet;
+    }
+
+    public void run() {
+        try {
+            while (_running) {
+                StructPollfd[] fds = getPollSet();
+                try {
+                    Os.poll(fds, -1);
+                } catch (ErrnoException ee) {
+                    if (ee.errno == OsConstants.EINTR)
+                        continue;
+                    _log.error("Event loop poll failed", ee);
+                    break;
+                }
+                if (fds[0].revents != 0)
+                    drainWakeup();
+                for (int i = 1; i < fds.length; i++) {
+                    StructPollfd pfd = fds[i];
+                    int revents = pfd.revents;
+                    if (revents == 0)
+                        continue;
+                    pfd.revents = 0;
+                    Connection c = (Connection) pfd.userData;
+                    if (c._closed)
+                        continue;
+                    try {
+                        if (!c.readAvailable(revents))
+                            close(c, null);
+                    } catch (IOException ioe) {
+                        close(c, ioe);
+                    }
+                }
+            }
+        } finally {
+            _running = false;
+            for (Connection c : _connections) {
+                close(c, null);
+            }
+            closeQuietly(_wakeRead);
+            closeQuietly(_wakeWrite);
+            _wakeRead = null;
+            _wakeWrite = null;
+            if (_log.shouldDebug())
+                _log.debug("Event loop stopped");
+        }
+    }
+
+    private void drainWakeup() {
+        try {
+            Os.read(_wakeRead, _wakeBuf, 0, _wakeBuf.length);
+        } catch (ErrnoException ee) {
+            _log.warn("Cannot read wakeup pipe", ee);
+        } catch (InterruptedIOException iioe) {
+        }
+    }
+
+    private static void closeQuietly(FileDescriptor fd) {
+        if (fd == null)
+            return;
+        try {
+            Os.close(fd);
+        } catch (ErrnoException ee) {}
+    }
+}
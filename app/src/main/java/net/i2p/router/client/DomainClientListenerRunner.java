@@ -1,5 +1,8 @@
 package net.i2p.router.client;
 
+import android.os.Build;
+
+import java.io.FileDescriptor;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
@@ -10,13 +13,21 @@ import net.i2p.util.Log;
 
 /**
  * Unix domain socket version of ClientListenerRunner.
+ * <p/>
+ * On API 21 and above, accepted connections are serviced by a shared
+ * DomainClientEventLoop rather than two threads per connection.
+ * Set {@link #PROP_EVENT_LOOP} to false to use the thread-per-connection model.
  *
  * @author str4d
  * @since 0.9.14
  */
 public class DomainClientListenerRunner extends ClientListenerRunner {
+    /** @since 0.9.45 */
+    public static final String PROP_EVENT_LOOP = "i2cp.domainSocket.eventLoop";
+
     private final DomainSocketFactory factory;
     private final Log _log;
+    private DomainClientEventLoop _loop;
 
     public DomainClientListenerRunner(RouterContext context, ClientManager manager) {
         super(context, manager, -1);
@@ -32,19 +43,57 @@ public class DomainClientListenerRunner extends ClientListenerRunner {
         return factory.createServerSocket(DomainSocketFactory.I2CP_SOCKET_ADDRESS);
     }
 
+    /**
+     * @since 0.9.45
+     */
+    @Override
+    protected ClientConnectionRunner getConnectionRunner(Socket socket) {
+        DomainClientEventLoop loop = getEventLoop();
+        FileDescriptor fd = factory.getFileDescriptor(socket);
+        if (loop != null && fd != null)
+            return new DomainClientConnectionRunner(_context, _manager, socket, fd, loop);
+        return super.getConnectionRunner(socket);
+    }
+
+    /**
+     * @return the running event loop, or null if disabled or unavailable
+     * @since 0.9.45
+     */
+    private synchronized DomainClientEventLoop getEventLoop() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP ||
+                !_context.getBooleanPropertyDefaultTrue(PROP_EVENT_LOOP))
+            return null;
+        if (_loop == null || !_loop.isRunning()) {
+            DomainClientEventLoop loop = new DomainClientEventLoop(_context, "I2CP Domain");
+            try {
+                loop.start();
+            } catch (IOException ioe) {
+                _log.error("Cannot start I2CP event loop, using a thread per connection", ioe);
+                return null;
+            }
+            _loop = loop;
+        }
+        return _loop;
+    }
+
     @Override
     public void stopListening() {
         _running = false;
-        // LocalServerSocket.close() fails silently if the socket is blocking in accept(), so we
-        // trick the socket by opening a new connection and then immediately closing it.
-        // http://stackoverflow.com/questions/8007982/java-serversocket-and-android-localserversocket
-        try {
-            _log.debug("Connecting to domain socket to trigger close");
-            Socket s = factory.createSocket(DomainSocketFactory.I2CP_SOCKET_ADDRESS);
-            s.close();
-        } catch (IOException e) {
-            _log.error("Failed to connect to domain socket to trigger close", e);
+        // DomainServerSocket.close() wakes up runServer() if it is blocked in accept(),
+        // and is safe to call again when runServer() exits.
+        ServerSocket socket = _socket;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                _log.error("Failed to close domain socket", e);
+            }
+        }
+        synchronized (this) {
+            if (_loop != null) {
+                _loop.stop();
+                _loop = null;
+            }
         }
-        // runServer() will close the LocalServerSocket.
     }
 }
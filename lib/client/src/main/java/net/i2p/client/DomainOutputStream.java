@@ -0,0 +1,153 @@
+package net.i2p.client;
+
+import net.i2p.data.ByteArray;
+import net.i2p.util.ByteCache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Coalesces the many small writes made while serializing an I2CP message
+ * (length, type, then each field of the body) into a single write to the
+ * LocalSocket, made on flush() or when the buffer fills.
+ * <p/>
+ * The buffer is taken from a shared ByteCache on the first write, and
+ * returned on close(), or on the next write or flush after release(), so
+ * idle sockets do not hold one.
+ * Not thread safe; callers already serialize writes to a socket. Only
+ * release() may be called from another thread, e.g. when the socket is
+ * closed while a write is in progress.
+ *
+ * @since 0.9.45
+ */
+class DomainOutputStream extends OutputStream {
+    /** buffers kept per size */
+    private static final int CACHE_SIZE = 16;
+
+    private final OutputStream mOut;
+    private final ByteCache mCache;
+    private ByteArray mBuffer;
+    private int mCount;
+    /** set by release() from any thread */
+    private volatile boolean mClosed;
+
+    /**
+     * @param out the socket stream
+     * @param size the buffer size, greater than zero
+     */
+    DomainOutputStream(OutputStream out, int size) {
+        this(out, ByteCache.getInstance(CACHE_SIZE, size));
+    }
+
+    /**
+     * Used for testing.
+     */
+    DomainOutputStream(OutputStream out, ByteCache cache) {
+        mOut = out;
+        mCache = cache;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        byte[] buf = getBuffer();
+        if (mCount >= buf.length)
+            flushBuffer();
+        buf[mCount++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        byte[] buf = getBuffer();
+        if (len >= buf.length) {
+            // Larger than the buffer, no point copying it
+            flushBuffer();
+            mOut.write(b, off, len);
+            return;
+        }
+        if (len > buf.length - mCount)
+            flushBuffer();
+        System.arraycopy(b, off, buf, mCount, len);
+        mCount += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        mOut.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            discardBuffer();
+            return;
+        }
+        try {
+            flushBuffer();
+        } finally {
+            mClosed = true;
+            discardBuffer();
+            mOut.close();
+        }
+    }
+
+    /**
+     * Discard any unflushed data. Further writes and flushes will throw
+     * IOException. May be called from any thread; the buffer is returned
+     * to the cache by the writing thread, on its next write or flush, since
+     * it may be in the middle of one now.
+     */
+    void release() {
+        mClosed = true;
+    }
+
+    /**
+     * @return the number of bytes waiting to be flushed
+     */
+    int getBufferedCount() {
+        return mCount;
+    }
+
+    private byte[] getBuffer() throws IOException {
+        if (mClosed) {
+            discardBuffer();
+            throw new IOException("Stream closed");
+        }
+        if (mBuffer == null)
+            mBuffer = mCache.acquire();
+        return mBuffer.getData();
+    }
+
+    private void flushBuffer() throws IOException {
+        if (mClosed) {
+            discardBuffer();
+            throw new IOException("Stream closed");
+        }
+        if (mCount > 0) {
+            ByteArray ba = mBuffer;
+            if (ba == null)
+                throw new IOException("Stream closed");
+            mOut.write(ba.getData(), 0, mCount);
+            mCount = 0;
+        }
+    }
+
+    /**
+     * Only called from the writing thread.
+     */
+    private void discardBuffer() {
+        ByteArray ba = mBuffer;
+        mCount = 0;
+        if (ba != null) {
+            mBuffer = null;
+            returnBuffer(ba);
+        }
+    }
+
+    /**
+     * Overridden for testing.
+     */
+    void returnBuffer(ByteArray ba) {
+        mCache.release(ba, false);
+    }
+}
@@ -1,13 +1,16 @@
 package net.i2p.client;
 
 import android.net.LocalServerSocket;
+import android.net.LocalSocket;
 
+import java.io.FileDescriptor;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.nio.channels.ServerSocketChannel;
 
 /**
@@ -18,20 +21,26 @@ import java.nio.channels.ServerSocketChannel;
  * DomainServerSockets are always bound.
  * You may not create an unbound DomainServerSocket.
  * Create this through the DomainSocketFactory.
+ * <p/>
+ * close() wakes up any thread blocked in accept(), which then throws a
+ * SocketException. On API 21 and above, accept() also honors setSoTimeout().
  *
  * @author str4d
  * @since 0.9.14
  */
 class DomainServerSocket extends ServerSocket {
     private final LocalServerSocket mLocalServerSocket;
+    private final String mName;
     private final DomainSocketFactory mDomainSocketFactory;
+    private final DomainSocketPoller mPoller;
     private volatile boolean mClosed;
+    private volatile int mSoTimeout;
 
     /**
      * @throws IOException
      */
     public DomainServerSocket(String name, DomainSocketFactory domainSocketFactory) throws IOException {
-        this(new LocalServerSocket(name), domainSocketFactory);
+        this(new LocalServerSocket(name), name, domainSocketFactory, DomainSocketPoller.getInstance());
     }
 
     /**
@@ -40,16 +49,51 @@ class DomainServerSocket extends ServerSocket {
      * @throws IOException
      */
     DomainServerSocket(LocalServerSocket localServerSocket, DomainSocketFactory domainSocketFactory) throws IOException {
+        this(localServerSocket, null, domainSocketFactory, DomainSocketPoller.getInstance());
+    }
+
+    /**
+     * Used for testing.
+     *
+     * @param name the socket address, or null
+     * @since 0.9.45
+     */
+    DomainServerSocket(LocalServerSocket localServerSocket, String name,
+                       DomainSocketFactory domainSocketFactory, DomainSocketPoller poller) {
         mLocalServerSocket = localServerSocket;
+        mName = name;
         mDomainSocketFactory = domainSocketFactory;
+        mPoller = poller;
     }
 
     /**
+     * @throws SocketTimeoutException if the timeout set by setSoTimeout() expires
+     * @throws SocketException if the socket is closed, before or during the call
      * @throws IOException
      */
     @Override
     public Socket accept() throws IOException {
-        return mDomainSocketFactory.createSocket(mLocalServerSocket.accept());
+        if (mClosed)
+            throw new SocketException("Socket is closed");
+        FileDescriptor fd = mLocalServerSocket.getFileDescriptor();
+        if (fd != null && !mPoller.waitForReadable(fd, mSoTimeout))
+            throw new SocketTimeoutException("Accept timed out");
+        if (mClosed)
+            throw new SocketException("Socket is closed");
+        LocalSocket localSocket;
+        try {
+            localSocket = mLocalServerSocket.accept();
+        } catch (IOException ioe) {
+            if (mClosed)
+                throw new SocketException("Socket is closed");
+            throw ioe;
+        }
+        if (mClosed) {
+            // Probably the connection that woke us up
+            localSocket.close();
+            throw new SocketException("Socket is closed");
+        }
+        return mDomainSocketFactory.createSocket(localSocket);
     }
 
     /**
@@ -69,12 +113,23 @@ class DomainServerSocket extends ServerSocket {
     }
 
     /**
+     * Closes the socket, waking up any thread blocked in accept().
+     * Subsequent calls do nothing.
+     *
      * @throws IOException
      */
     @Override
     public void close() throws IOException {
-        mLocalServerSocket.close();
-        mClosed = true;
+        synchronized (this) {
+            if (mClosed)
+                return;
+            mClosed = true;
+        }
+        try {
+            mPoller.wakeup(mLocalServerSocket.getFileDescriptor(), mName);
+        } finally {
+            mLocalServerSocket.close();
+        }
     }
 
     /**
@@ -126,11 +181,11 @@ class DomainServerSocket extends ServerSocket {
     }
 
     /**
-     * @throws UnsupportedOperationException always
+     * @return the accept() timeout in ms, 0 for none
      */
     @Override
     public int getSoTimeout() {
-        throw new UnsupportedOperationException();
+        return mSoTimeout;
     }
 
     /**
@@ -168,10 +223,19 @@ class DomainServerSocket extends ServerSocket {
     }
 
     /**
-     * Does nothing.
+     * Only enforced on API 21 and above; older devices ignore the timeout.
+     *
+     * @param timeout the accept() timeout in ms, 0 for none
+     * @throws SocketException if the socket is closed
+     * @throws IllegalArgumentException if timeout is negative
      */
     @Override
     public void setSoTimeout(int timeout) throws SocketException {
+        if (mClosed)
+            throw new SocketException("Socket is closed");
+        if (timeout < 0)
+            throw new IllegalArgumentException("timeout < 0");
+        mSoTimeout = timeout;
     }
 
     @Override
@@ -3,6 +3,7 @@ package net.i2p.client;
 import android.net.LocalSocket;
 import android.net.LocalSocketAddress;
 
+import java.io.FileDescriptor;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -18,12 +19,18 @@ import java.nio.channels.SocketChannel;
  * DomainSockets are always bound, and always start out connected.
  * You may not create an unbound DomainSocket.
  * Create this through the DomainSocketManager.
+ * <p/>
+ * Unless the write buffer size is set to 0, the OutputStream coalesces
+ * small writes until it is flushed, so callers must flush() after each
+ * message.
  *
  * @author str4d
  * @since 0.9.14
  */
 class DomainSocket extends Socket {
     private final LocalSocket mLocalSocket;
+    private int mWriteBufferSize;
+    private OutputStream mOutputStream;
 
     /**
      * @throws IOException
@@ -50,11 +57,30 @@ class DomainSocket extends Socket {
     }
 
     /**
+     * Unflushed data in the OutputStream is discarded.
+     *
      * @throws IOException
      */
     @Override
     public void close() throws IOException {
-        mLocalSocket.close();
+        try {
+            mLocalSocket.close();
+        } finally {
+            synchronized (this) {
+                if (mOutputStream instanceof DomainOutputStream)
+                    ((DomainOutputStream) mOutputStream).release();
+            }
+        }
+    }
+
+    /**
+     * For callers that need to poll the underlying socket directly.
+     *
+     * @return the file descriptor of the wrapped LocalSocket
+     * @since 0.9.45
+     */
+    FileDescriptor getFileDescriptor() {
+        return mLocalSocket.getFileDescriptor();
     }
 
     /**
@@ -138,11 +164,43 @@ class DomainSocket extends Socket {
     }
 
     /**
+     * @return a stream that coalesces writes until flush(), or the
+     *         LocalSocket stream if the write buffer size is 0
      * @throws IOException
      */
     @Override
-    public OutputStream getOutputStream() throws IOException {
-        return mLocalSocket.getOutputStream();
+    public synchronized OutputStream getOutputStream() throws IOException {
+        if (mOutputStream == null) {
+            OutputStream out = mLocalSocket.getOutputStream();
+            if (mWriteBufferSize > 0)
+                mOutputStream = new DomainOutputStream(out, mWriteBufferSize);
+            else
+                mOutputStream = out;
+        }
+        return mOutputStream;
+    }
+
+    /**
+     * @return the size of the buffer used to coalesce writes, 0 if disabled
+     * @since 0.9.45
+     */
+    synchronized int getWriteBufferSize() {
+        return mWriteBufferSize;
+    }
+
+    /**
+     * Must be called before getOutputStream().
+     *
+     * @param size the size of the buffer used to coalesce writes, 0 to disable
+     * @throws IllegalStateException if the OutputStream was already created
+     * @since 0.9.45
+     */
+    synchronized void setWriteBufferSize(int size) {
+        if (mOutputStream != null)
+            throw new IllegalStateException("OutputStream already created");
+        if (size < 0)
+            throw new IllegalArgumentException("size < 0");
+        mWriteBufferSize = size;
     }
 
     /**
@@ -5,9 +5,11 @@ import android.net.LocalSocket;
 import net.i2p.I2PAppContext;
 import net.i2p.util.Log;
 
+import java.io.FileDescriptor;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketException;
 
 /**
  * Bridge to Android implementation of Unix domain sockets.
@@ -18,20 +20,80 @@ import java.net.Socket;
 public class DomainSocketFactory {
     public static String I2CP_SOCKET_ADDRESS = "net.i2p.android.client.i2cp";
 
+    /**
+     * Bytes of small writes to coalesce before writing to the socket, 0 to disable.
+     * @since 0.9.45
+     */
+    public static final String PROP_WRITE_BUFFER_SIZE = "i2cp.domainSocket.writeBufferSize";
+    /**
+     * Kernel send buffer size (SO_SNDBUF), 0 for the system default.
+     * @since 0.9.45
+     */
+    public static final String PROP_SEND_BUFFER_SIZE = "i2cp.domainSocket.sendBufferSize";
+    /**
+     * Kernel receive buffer size (SO_RCVBUF), 0 for the system default.
+     * @since 0.9.45
+     */
+    public static final String PROP_RECEIVE_BUFFER_SIZE = "i2cp.domainSocket.receiveBufferSize";
+    /**
+     * Big enough for a streaming packet at the default MTU in a SendMessageMessage.
+     * @since 0.9.45
+     */
+    public static final int DEFAULT_WRITE_BUFFER_SIZE = 8 * 1024;
+
     public final Log _log;
+    private final int _writeBufferSize;
+    private final int _sendBufferSize;
+    private final int _receiveBufferSize;
 
     public DomainSocketFactory(I2PAppContext context) {
         _log = context.logManager().getLog(getClass());
+        _writeBufferSize = Math.max(0, context.getProperty(PROP_WRITE_BUFFER_SIZE, DEFAULT_WRITE_BUFFER_SIZE));
+        _sendBufferSize = context.getProperty(PROP_SEND_BUFFER_SIZE, 0);
+        _receiveBufferSize = context.getProperty(PROP_RECEIVE_BUFFER_SIZE, 0);
     }
 
     public Socket createSocket(String name) throws IOException {
         if (_log.shouldDebug())
             _log.debug("Connecting to domain socket " + name);
-        return new DomainSocket(name);
+        return configure(new DomainSocket(name));
     }
 
     public Socket createSocket(LocalSocket localSocket) {
-        return new DomainSocket(localSocket);
+        return configure(new DomainSocket(localSocket));
+    }
+
+    /**
+     * Apply the configured buffer sizes.
+     * Failing to set the kernel buffer sizes is not fatal.
+     *
+     * @since 0.9.45
+     */
+    private DomainSocket configure(DomainSocket socket) {
+        socket.setWriteBufferSize(_writeBufferSize);
+        try {
+            if (_sendBufferSize > 0)
+                socket.setSendBufferSize(_sendBufferSize);
+            if (_receiveBufferSize > 0)
+                socket.setReceiveBufferSize(_receiveBufferSize);
+        } catch (SocketException se) {
+            _log.warn("Cannot set domain socket buffer sizes", se);
+        }
+        return socket;
+    }
+
+    /**
+     * Get the file descriptor of a Socket created by this factory, so that it
+     * can be multiplexed with poll() instead of a blocking reader thread.
+     *
+     * @param socket a Socket returned by one of the createSocket() methods
+     * @return the file descriptor, or null if socket is not a domain socket
+     * @since 0.9.45
+     */
+    public FileDescriptor getFileDescriptor(Socket socket) {
+        if (socket instanceof DomainSocket)
+            return ((DomainSocket) socket).getFileDescriptor();
+        return null;
     }
 
     public ServerSocket createServerSocket(String name) throws IOException {
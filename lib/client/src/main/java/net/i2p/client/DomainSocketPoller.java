@@ -0,0 +1,119 @@
+package net.i2p.client;
+
+import android.annotation.TargetApi;
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructPollfd;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+
+/**
+ * Waits for, and interrupts, blocking operations on a domain socket.
+ * <p/>
+ * LocalServerSocket.accept() cannot be given a timeout, and close() does not
+ * wake a thread blocked in accept(). On API 21 and above we poll() the file
+ * descriptor before accepting, and shutdown() it to wake any waiting thread.
+ * Older devices have neither, so there accept() blocks forever and wakeup()
+ * falls back to connecting to the socket.
+ *
+ * @since 0.9.45
+ */
+abstract class DomainSocketPoller {
+    private static DomainSocketPoller _instance;
+
+    static synchronized DomainSocketPoller getInstance() {
+        if (_instance == null) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP)
+                _instance = new OsPoller();
+            else
+                _instance = new LegacyPoller();
+        }
+        return _instance;
+    }
+
+    /**
+     * Wait until fd is readable, or has been shut down.
+     *
+     * @param timeout in ms, 0 for no timeout
+     * @return false if the timeout expired
+     * @throws IOException
+     */
+    abstract boolean waitForReadable(FileDescriptor fd, int timeout) throws IOException;
+
+    /**
+     * Wake any thread blocked on fd.
+     *
+     * @param name the address of the socket, may be null
+     */
+    abstract void wakeup(FileDescriptor fd, String name);
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static class OsPoller extends DomainSocketPoller {
+        @Override
+        boolean waitForReadable(FileDescriptor fd, int timeout) throws IOException {
+            StructPollfd pfd = new StructPollfd();
+            pfd.fd = fd;
+            pfd.events = (short) OsConstants.POLLIN;
+            StructPollfd[] fds = new StructPollfd[] { pfd };
+            long end = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+            while (true) {
+                int wait = -1;
+                if (timeout > 0) {
+                    wait = (int) (end - System.currentTimeMillis());
+                    if (wait <= 0)
+                        return false;
+                }
+                try {
+                    return Os.poll(fds, wait) > 0;
+                } catch (ErrnoException ee) {
+                    if (ee.errno != OsConstants.EINTR)
+                        throw new IOException("poll failed: " + ee.getMessage());
+                }
+            }
+        }
+
+        @Override
+        void wakeup(FileDescriptor fd, String name) {
+            if (fd == null)
+                return;
+            try {
+                Os.shutdown(fd, OsConstants.SHUT_RDWR);
+            } catch (ErrnoException ee) {
+                // Already closed or not connected, nothing is waiting
+            }
+        }
+    }
+
+    private static class LegacyPoller extends DomainSocketPoller {
+        @Override
+        boolean waitForReadable(FileDescriptor fd, int timeout) {
+            return true;
+        }
+
+        /**
+         * LocalServerSocket.close() fails silently if the socket is blocking in accept(), so we
+         * trick the socket by opening a new connection and then immediately closing it.
+         * http://stackoverflow.com/questions/8007982/java-serversocket-and-android-localserversocket
+         */
+        @Override
+        void wakeup(FileDescriptor fd, String name) {
+            if (name == null)
+                return;
+            LocalSocket s = new LocalSocket();
+            try {
+                s.connect(new LocalSocketAddress(name));
+            } catch (IOException ioe) {
+                // Nothing listening
+            } finally {
+                try {
+                    s.close();
+                } catch (IOException ioe) {}
+            }
+        }
+    }
+}
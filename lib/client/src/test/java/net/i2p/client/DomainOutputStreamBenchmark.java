@@ -0,0 +1,128 @@
+package net.i2p.client;
+
+import net.i2p.data.Certificate;
+import net.i2p.data.Destination;
+import net.i2p.data.Payload;
+import net.i2p.data.PublicKey;
+import net.i2p.data.SigningPublicKey;
+import net.i2p.data.i2cp.SendMessageMessage;
+import net.i2p.data.i2cp.SessionId;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures the number of writes that reach the socket (each one a syscall on a
+ * LocalSocket) and the serialization throughput when sending streaming-library
+ * sized SendMessageMessages, with and without DomainOutputStream.
+ * <p/>
+ * The write counts are always checked; the timed run is skipped unless run
+ * with -Di2cp.benchmark=true, like I2CPTransportBenchmark.
+ */
+public class DomainOutputStreamBenchmark {
+    private static final String PROP_ENABLED = "i2cp.benchmark";
+    /** Default streaming MTU */
+    private static final int PAYLOAD_SIZE = 1730;
+    /** for checking the write counts */
+    private static final int CHECK_MESSAGES = 100;
+    private static final int MESSAGES = 20000;
+
+    /**
+     * Stands in for the LocalSocket stream, counting write calls.
+     */
+    private static class CountingOutputStream extends OutputStream {
+        long writes;
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            writes++;
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            writes++;
+            bytes += len;
+        }
+    }
+
+    private static SendMessageMessage createMessage() {
+        Destination dest = new Destination();
+        dest.setPublicKey(new PublicKey(new byte[PublicKey.KEYSIZE_BYTES]));
+        dest.setSigningPublicKey(new SigningPublicKey(new byte[SigningPublicKey.KEYSIZE_BYTES]));
+        dest.setCertificate(Certificate.NULL_CERT);
+        Payload payload = new Payload();
+        payload.setEncryptedData(new byte[PAYLOAD_SIZE]);
+        SendMessageMessage msg = new SendMessageMessage();
+        msg.setSessionId(new SessionId(1));
+        msg.setDestination(dest);
+        msg.setPayload(payload);
+        msg.setNonce(1);
+        return msg;
+    }
+
+    /**
+     * @return elapsed ns
+     */
+    private static long send(SendMessageMessage msg, OutputStream out, int messages) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            msg.writeMessage(out);
+            out.flush();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static String report(String name, CountingOutputStream counter, long elapsed) {
+        double mbps = (counter.bytes / (1024.0 * 1024.0)) / (elapsed / 1000000000.0);
+        return String.format("%s: writes=%d writesPerMessage=%.2f bytes=%d MBps=%.1f",
+                name, counter.writes, (double) counter.writes / MESSAGES, counter.bytes, mbps);
+    }
+
+    @Test
+    public void testWriteCoalescing() throws Exception {
+        SendMessageMessage msg = createMessage();
+
+        CountingOutputStream raw = new CountingOutputStream();
+        send(msg, raw, CHECK_MESSAGES);
+
+        CountingOutputStream socket = new CountingOutputStream();
+        DomainOutputStream coalesced = new DomainOutputStream(socket,
+                DomainSocketFactory.DEFAULT_WRITE_BUFFER_SIZE);
+        send(msg, coalesced, CHECK_MESSAGES);
+        coalesced.close();
+
+        assertEquals(raw.bytes, socket.bytes);
+        // One write per flushed message
+        assertEquals(CHECK_MESSAGES, socket.writes);
+        assertTrue(raw.writes > socket.writes);
+    }
+
+    @Test
+    public void benchmarkWriteCoalescing() throws Exception {
+        assumeTrue(Boolean.getBoolean(PROP_ENABLED));
+        SendMessageMessage msg = createMessage();
+
+        // Warm up
+        send(msg, new CountingOutputStream(), MESSAGES);
+
+        CountingOutputStream raw = new CountingOutputStream();
+        long rawTime = send(msg, raw, MESSAGES);
+
+        CountingOutputStream socket = new CountingOutputStream();
+        DomainOutputStream coalesced = new DomainOutputStream(socket,
+                DomainSocketFactory.DEFAULT_WRITE_BUFFER_SIZE);
+        long coalescedTime = send(msg, coalesced, MESSAGES);
+        coalesced.close();
+
+        System.out.println(report("raw", raw, rawTime));
+        System.out.println(report("coalesced", socket, coalescedTime));
+    }
+}
@@ -0,0 +1,151 @@
+package net.i2p.client;
+
+import net.i2p.data.ByteArray;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class DomainOutputStreamTest {
+    OutputStream mockStream;
+    DomainOutputStream domainStream;
+
+    @Before
+    public void setUp() throws Exception {
+        mockStream = mock(OutputStream.class);
+        domainStream = new DomainOutputStream(mockStream, 16);
+    }
+
+    @Test
+    public void testWriteIsBuffered() throws Exception {
+        domainStream.write(1);
+        domainStream.write(new byte[4], 0, 4);
+        assertEquals(5, domainStream.getBufferedCount());
+        verifyZeroInteractions(mockStream);
+    }
+
+    @Test
+    public void testFlushWritesOnce() throws Exception {
+        domainStream.write(1);
+        domainStream.write(new byte[4], 0, 4);
+        domainStream.flush();
+        verify(mockStream, times(1)).write(any(byte[].class), anyInt(), anyInt());
+        verify(mockStream).flush();
+        assertEquals(0, domainStream.getBufferedCount());
+    }
+
+    @Test
+    public void testWritesAreOrdered() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DomainOutputStream out = new DomainOutputStream(baos, 16);
+        byte[] expected = new byte[40];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (byte) i;
+        }
+        out.write(expected, 0, 3);
+        out.write(expected[3]);
+        // Overflows the buffer
+        out.write(expected, 4, 14);
+        // Larger than the buffer
+        out.write(expected, 18, 20);
+        out.write(expected, 38, 2);
+        out.flush();
+        assertArrayEquals(expected, baos.toByteArray());
+    }
+
+    @Test
+    public void testLargeWriteBypassesBuffer() throws Exception {
+        byte[] big = new byte[32];
+        domainStream.write(big, 0, big.length);
+        verify(mockStream).write(big, 0, big.length);
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        domainStream.write(1);
+        domainStream.close();
+        verify(mockStream).write(any(byte[].class), anyInt(), anyInt());
+        verify(mockStream).close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testWriteAfterRelease() throws Exception {
+        domainStream.write(1);
+        domainStream.release();
+        domainStream.write(1);
+    }
+
+    @Test
+    public void testReleaseDiscards() throws Exception {
+        domainStream.write(1);
+        domainStream.release();
+        verify(mockStream, never()).write(any(byte[].class), anyInt(), anyInt());
+    }
+
+    @Test
+    public void testReleaseDuringConcurrentWrite() throws Exception {
+        final List<Thread> returnedOn = new CopyOnWriteArrayList<>();
+        final DomainOutputStream out = new DomainOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {}
+
+            @Override
+            public void write(byte[] b, int off, int len) {}
+        }, 16) {
+            @Override
+            void returnBuffer(ByteArray ba) {
+                returnedOn.add(Thread.currentThread());
+                super.returnBuffer(ba);
+            }
+        };
+        final CountDownLatch writing = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                byte[] data = new byte[5];
+                try {
+                    while (true) {
+                        out.write(data, 0, data.length);
+                        out.write(1);
+                        out.flush();
+                        writing.countDown();
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+        writer.start();
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        // As DomainSocket.close() does, from another thread
+        out.release();
+        writer.join(5000);
+
+        assertFalse(writer.isAlive());
+        assertTrue(String.valueOf(failure.get()), failure.get() instanceof IOException);
+        // Returned once, by the writer, after it stopped using it
+        assertEquals(Collections.singletonList(writer), returnedOn);
+    }
+}
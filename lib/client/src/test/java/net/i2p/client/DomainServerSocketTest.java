@@ -5,10 +5,20 @@ import android.net.LocalSocket;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertSame;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -16,13 +26,15 @@ import static org.mockito.Mockito.when;
 public class DomainServerSocketTest {
     LocalServerSocket mockServerSocket;
     DomainSocketFactory mockFactory;
+    DomainSocketPoller mockPoller;
     DomainServerSocket domainServerSocket;
 
     @Before
     public void setUp() throws Exception {
         mockServerSocket = mock(LocalServerSocket.class);
         mockFactory = mock(DomainSocketFactory.class);
-        domainServerSocket = new DomainServerSocket(mockServerSocket, mockFactory);
+        mockPoller = mock(DomainSocketPoller.class);
+        domainServerSocket = new DomainServerSocket(mockServerSocket, "foo", mockFactory, mockPoller);
     }
 
     @Test
@@ -34,6 +46,69 @@ public class DomainServerSocketTest {
         assertSame(ds, domainServerSocket.accept());
     }
 
+    @Test
+    public void testAcceptPollsWithTimeout() throws Exception {
+        FileDescriptor fd = new FileDescriptor();
+        LocalSocket ls = mock(LocalSocket.class);
+        DomainSocket ds = mock(DomainSocket.class);
+        when(mockServerSocket.getFileDescriptor()).thenReturn(fd);
+        when(mockPoller.waitForReadable(fd, 500)).thenReturn(true);
+        when(mockServerSocket.accept()).thenReturn(ls);
+        when(mockFactory.createSocket(ls)).thenReturn(ds);
+        domainServerSocket.setSoTimeout(500);
+        assertSame(ds, domainServerSocket.accept());
+        verify(mockPoller).waitForReadable(fd, 500);
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void testAcceptTimeout() throws Exception {
+        FileDescriptor fd = new FileDescriptor();
+        when(mockServerSocket.getFileDescriptor()).thenReturn(fd);
+        when(mockPoller.waitForReadable(fd, 500)).thenReturn(false);
+        domainServerSocket.setSoTimeout(500);
+        try {
+            domainServerSocket.accept();
+        } finally {
+            verify(mockServerSocket, never()).accept();
+        }
+    }
+
+    @Test(expected = SocketException.class)
+    public void testAcceptAfterClose() throws Exception {
+        domainServerSocket.close();
+        domainServerSocket.accept();
+    }
+
+    @Test(expected = SocketException.class)
+    public void testAcceptInterruptedByClose() throws Exception {
+        when(mockServerSocket.accept()).thenAnswer(new Answer<LocalSocket>() {
+            public LocalSocket answer(InvocationOnMock invocation) throws Throwable {
+                domainServerSocket.close();
+                throw new IOException();
+            }
+        });
+        domainServerSocket.accept();
+    }
+
+    @Test
+    public void testAcceptClosesWakeupConnection() throws Exception {
+        final LocalSocket ls = mock(LocalSocket.class);
+        when(mockServerSocket.accept()).thenAnswer(new Answer<LocalSocket>() {
+            public LocalSocket answer(InvocationOnMock invocation) throws Throwable {
+                domainServerSocket.close();
+                return ls;
+            }
+        });
+        try {
+            domainServerSocket.accept();
+        } catch (SocketException e) {
+            verify(ls).close();
+            verifyZeroInteractions(mockFactory);
+            return;
+        }
+        throw new AssertionError("SocketException not thrown");
+    }
+
     @Test(expected = UnsupportedOperationException.class)
     public void testBind() throws Exception {
         domainServerSocket.bind(null);
@@ -50,6 +125,32 @@ public class DomainServerSocketTest {
         verify(mockServerSocket).close();
     }
 
+    @Test
+    public void testCloseWakesAccept() throws Exception {
+        FileDescriptor fd = new FileDescriptor();
+        when(mockServerSocket.getFileDescriptor()).thenReturn(fd);
+        domainServerSocket.close();
+        verify(mockPoller).wakeup(fd, "foo");
+    }
+
+    @Test
+    public void testCloseTwice() throws Exception {
+        domainServerSocket.close();
+        domainServerSocket.close();
+        verify(mockServerSocket, times(1)).close();
+    }
+
+    @Test
+    public void testCloseAfterWakeupFailure() throws Exception {
+        doThrow(RuntimeException.class).when(mockPoller).wakeup(null, "foo");
+        try {
+            domainServerSocket.close();
+        } catch (RuntimeException e) {
+        }
+        verify(mockServerSocket).close();
+        assertEquals(true, domainServerSocket.isClosed());
+    }
+
     @Test
     public void testGetChannel() throws Exception {
         assertEquals(null, domainServerSocket.getChannel());
@@ -80,9 +181,9 @@ public class DomainServerSocketTest {
         assertEquals(false, domainServerSocket.getReuseAddress());
     }
 
-    @Test(expected = UnsupportedOperationException.class)
+    @Test
     public void testGetSoTimeout() throws Exception {
-        domainServerSocket.getSoTimeout();
+        assertEquals(0, domainServerSocket.getSoTimeout());
     }
 
     @Test
@@ -117,10 +218,22 @@ public class DomainServerSocketTest {
 
     @Test
     public void testSetSoTimeout() throws Exception {
-        domainServerSocket.setSoTimeout(0);
+        domainServerSocket.setSoTimeout(1000);
+        assertEquals(1000, domainServerSocket.getSoTimeout());
         verifyZeroInteractions(mockServerSocket);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetSoTimeoutNegative() throws Exception {
+        domainServerSocket.setSoTimeout(-1);
+    }
+
+    @Test(expected = SocketException.class)
+    public void testSetSoTimeoutClosed() throws Exception {
+        domainServerSocket.close();
+        domainServerSocket.setSoTimeout(1000);
+    }
+
     @Test
     public void testToString() throws Exception {
         when(mockServerSocket.toString()).thenReturn("foo");
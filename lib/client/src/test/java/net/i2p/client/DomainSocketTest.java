@@ -5,6 +5,7 @@ import android.net.LocalSocket;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.FileDescriptor;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -12,6 +13,9 @@ import java.net.SocketException;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -59,6 +63,13 @@ public class DomainSocketTest {
         assertEquals(null, domainSocket.getInetAddress());
     }
 
+    @Test
+    public void testGetFileDescriptor() throws Exception {
+        FileDescriptor fd = new FileDescriptor();
+        when(mockSocket.getFileDescriptor()).thenReturn(fd);
+        assertSame(fd, domainSocket.getFileDescriptor());
+    }
+
     @Test
     public void testGetInputStream() throws Exception {
         InputStream is = mock(InputStream.class);
@@ -98,6 +109,38 @@ public class DomainSocketTest {
         assertSame(os, domainSocket.getOutputStream());
     }
 
+    @Test
+    public void testGetOutputStreamCoalesced() throws Exception {
+        OutputStream os = mock(OutputStream.class);
+        when(mockSocket.getOutputStream()).thenReturn(os);
+        domainSocket.setWriteBufferSize(1024);
+        OutputStream out = domainSocket.getOutputStream();
+        assertTrue(out instanceof DomainOutputStream);
+        assertSame(out, domainSocket.getOutputStream());
+        out.write(new byte[16]);
+        verifyZeroInteractions(os);
+        out.flush();
+        verify(os).write(any(byte[].class), eq(0), eq(16));
+        verify(os).flush();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSetWriteBufferSizeAfterGetOutputStream() throws Exception {
+        when(mockSocket.getOutputStream()).thenReturn(mock(OutputStream.class));
+        domainSocket.getOutputStream();
+        domainSocket.setWriteBufferSize(1024);
+    }
+
+    @Test(expected = IOException.class)
+    public void testCloseReleasesOutputStream() throws Exception {
+        when(mockSocket.getOutputStream()).thenReturn(mock(OutputStream.class));
+        domainSocket.setWriteBufferSize(1024);
+        OutputStream out = domainSocket.getOutputStream();
+        out.write(1);
+        domainSocket.close();
+        out.write(1);
+    }
+
     @Test
     public void testGetPort() throws Exception {
         assertEquals(-1, domainSocket.getPort());
@@ -0,0 +1,332 @@
+package net.i2p.client;
+
+import android.net.LocalSocket;
+
+import net.i2p.I2PAppContext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compares I2CP-style request/response traffic over DomainSocketFactory-created
+ * sockets with plain TCP sockets on 127.0.0.1, as used for I2CP port 7654.
+ * <p/>
+ * The JVM has no LocalSocket, so the domain sockets are backed by a pair of
+ * kernel pipes, which have the same syscall-per-write cost.
+ * <p/>
+ * Skipped unless run with -Di2cp.benchmark=true, as it takes a while.
+ * <p/>
+ * For each transport and body size, reports messages/sec, p50/p99 round-trip
+ * latency and bytes allocated per message by the client thread. Results are
+ * written as JSON to build/reports/benchmarks/i2cp-transport.json (override
+ * with -Di2cp.benchmark.output=FILE). If -Di2cp.benchmark.baseline=FILE points
+ * to a properties file with entries like "domain.32.msgsPerSec" and
+ * "tcp.2200.msgsPerSec" (transport, body size), the test fails when
+ * throughput drops more than 20% below the baseline.
+ * Use -Di2cp.benchmark.messages=N for longer runs.
+ */
+public class I2CPTransportBenchmark {
+    private static final String PROP_ENABLED = "i2cp.benchmark";
+    private static final String PROP_OUTPUT = "i2cp.benchmark.output";
+    private static final String PROP_BASELINE = "i2cp.benchmark.baseline";
+    private static final String PROP_MESSAGES = "i2cp.benchmark.messages";
+    private static final String DEFAULT_OUTPUT = "build/reports/benchmarks/i2cp-transport.json";
+    private static final double MAX_REGRESSION = 0.20;
+
+    /** Small control message, like a SendMessageExpires ack */
+    private static final int SMALL_BODY = 32;
+    /** A streaming packet in a SendMessageMessage */
+    private static final int LARGE_BODY = 2200;
+    private static final int MESSAGE_TYPE = 5;
+    private static final int WARMUP = 500;
+
+    private int mMessages;
+    private List<Closeable> mToClose;
+
+    /** A connected client/server pair */
+    private static class SocketPair {
+        Socket client;
+        Socket server;
+        /** Ends the client's side, so the server sees EOF */
+        Closeable clientEnd;
+    }
+
+    private static class Result {
+        String transport;
+        int bodySize;
+        int messages;
+        double msgsPerSec;
+        double p50Micros;
+        double p99Micros;
+        long bytesAllocatedPerMsg;
+
+        String toJson() {
+            return String.format(Locale.US,
+                    "{\"transport\":\"%s\",\"bodySize\":%d,\"messages\":%d," +
+                            "\"msgsPerSec\":%.1f,\"p50Micros\":%.1f,\"p99Micros\":%.1f," +
+                            "\"bytesAllocatedPerMsg\":%d}",
+                    transport, bodySize, messages, msgsPerSec, p50Micros, p99Micros,
+                    bytesAllocatedPerMsg);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mMessages = Integer.getInteger(PROP_MESSAGES, 5000);
+        mToClose = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        for (Closeable c : mToClose) {
+            try {
+                c.close();
+            } catch (IOException ioe) {}
+        }
+    }
+
+    @Test
+    public void benchmarkDomainVsTcp() throws Exception {
+        assumeTrue(Boolean.getBoolean(PROP_ENABLED));
+        List<Result> results = new ArrayList<>();
+        for (int body : new int[] {SMALL_BODY, LARGE_BODY}) {
+            results.add(run("domain", createDomainPair(), body));
+            results.add(run("tcp", createTcpPair(), body));
+        }
+
+        StringBuilder json = new StringBuilder("[\n");
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            System.out.println(r.toJson());
+            json.append("  ").append(r.toJson());
+            if (i < results.size() - 1)
+                json.append(',');
+            json.append('\n');
+        }
+        json.append("]\n");
+        writeOutput(json.toString());
+
+        for (Result r : results) {
+            assertTrue(r.transport + " made no progress", r.msgsPerSec > 0);
+        }
+        checkBaseline(results);
+    }
+
+    private SocketPair createDomainPair() throws IOException {
+        DomainSocketFactory factory = new DomainSocketFactory(I2PAppContext.getGlobalContext());
+        final Pipe toServer = Pipe.open();
+        final Pipe toClient = Pipe.open();
+        mToClose.add(new Closeable() {
+            public void close() throws IOException {
+                toServer.sink().close();
+                toServer.source().close();
+                toClient.sink().close();
+                toClient.source().close();
+            }
+        });
+        SocketPair rv = new SocketPair();
+        // The mocked LocalSocket cannot close the pipes itself
+        rv.clientEnd = new Closeable() {
+            public void close() throws IOException {
+                toServer.sink().close();
+            }
+        };
+        rv.client = factory.createSocket(loopbackLocalSocket(
+                Channels.newInputStream(toClient.source()),
+                Channels.newOutputStream(toServer.sink())));
+        rv.server = factory.createSocket(loopbackLocalSocket(
+                Channels.newInputStream(toServer.source()),
+                Channels.newOutputStream(toClient.sink())));
+        return rv;
+    }
+
+    /**
+     * A LocalSocket stand-in backed by the given streams.
+     */
+    private static LocalSocket loopbackLocalSocket(InputStream in, OutputStream out) throws IOException {
+        LocalSocket ls = mock(LocalSocket.class);
+        when(ls.getInputStream()).thenReturn(in);
+        when(ls.getOutputStream()).thenReturn(out);
+        when(ls.isConnected()).thenReturn(true);
+        when(ls.isBound()).thenReturn(true);
+        return ls;
+    }
+
+    private SocketPair createTcpPair() throws IOException {
+        final ServerSocket ss = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        SocketPair rv = new SocketPair();
+        rv.client = new Socket(ss.getInetAddress(), ss.getLocalPort());
+        rv.server = ss.accept();
+        // I2CP over TCP disables Nagle on both ends
+        rv.client.setTcpNoDelay(true);
+        rv.server.setTcpNoDelay(true);
+        final SocketPair pair = rv;
+        rv.clientEnd = new Closeable() {
+            public void close() throws IOException {
+                pair.client.close();
+            }
+        };
+        mToClose.add(new Closeable() {
+            public void close() throws IOException {
+                pair.client.close();
+                pair.server.close();
+                ss.close();
+            }
+        });
+        return rv;
+    }
+
+    private Result run(String transport, SocketPair pair, int bodySize) throws Exception {
+        Thread echo = startEcho(pair.server);
+
+        DataOutputStream out = new DataOutputStream(pair.client.getOutputStream());
+        DataInputStream in = new DataInputStream(pair.client.getInputStream());
+        byte[] body = new byte[bodySize];
+        byte[] reply = new byte[5 + bodySize];
+
+        for (int i = 0; i < WARMUP; i++) {
+            roundTrip(out, in, body, reply);
+        }
+
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        long allocStart = allocatedBytes(mx);
+        long[] latencies = new long[mMessages];
+        long start = System.nanoTime();
+        for (int i = 0; i < mMessages; i++) {
+            long begin = System.nanoTime();
+            roundTrip(out, in, body, reply);
+            latencies[i] = System.nanoTime() - begin;
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocEnd = allocatedBytes(mx);
+
+        pair.clientEnd.close();
+        echo.join(5000);
+
+        Arrays.sort(latencies);
+        Result rv = new Result();
+        rv.transport = transport;
+        rv.bodySize = bodySize;
+        rv.messages = mMessages;
+        rv.msgsPerSec = mMessages * 1000000000.0 / elapsed;
+        rv.p50Micros = latencies[latencies.length / 2] / 1000.0;
+        rv.p99Micros = latencies[(int) (latencies.length * 0.99)] / 1000.0;
+        rv.bytesAllocatedPerMsg = (allocStart >= 0 && allocEnd >= 0) ?
+                (allocEnd - allocStart) / mMessages : -1;
+        return rv;
+    }
+
+    private static void roundTrip(DataOutputStream out, DataInputStream in,
+                                  byte[] body, byte[] reply) throws IOException {
+        out.writeInt(body.length);
+        out.writeByte(MESSAGE_TYPE);
+        out.write(body);
+        out.flush();
+        in.readFully(reply);
+    }
+
+    /**
+     * Reads frames and writes each one back, until EOF.
+     */
+    private static Thread startEcho(final Socket socket) {
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    DataInputStream in = new DataInputStream(socket.getInputStream());
+                    DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                    byte[] buf = new byte[64 * 1024];
+                    while (true) {
+                        int len = in.readInt();
+                        int type = in.readUnsignedByte();
+                        in.readFully(buf, 0, len);
+                        out.writeInt(len);
+                        out.writeByte(type);
+                        out.write(buf, 0, len);
+                        out.flush();
+                    }
+                } catch (IOException ioe) {
+                    // EOF, done
+                }
+            }
+        }, "I2CP Benchmark Echo");
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    /**
+     * @return bytes allocated by the current thread, or -1 if the JVM cannot tell us
+     */
+    private static long allocatedBytes(ThreadMXBean mx) {
+        if (mx instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean smx = (com.sun.management.ThreadMXBean) mx;
+            if (smx.isThreadAllocatedMemorySupported() && smx.isThreadAllocatedMemoryEnabled())
+                return smx.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static void writeOutput(String json) throws IOException {
+        File f = new File(System.getProperty(PROP_OUTPUT, DEFAULT_OUTPUT));
+        File dir = f.getAbsoluteFile().getParentFile();
+        if (dir != null)
+            dir.mkdirs();
+        Writer w = new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
+        try {
+            w.write(json);
+        } finally {
+            w.close();
+        }
+    }
+
+    private static void checkBaseline(List<Result> results) throws IOException {
+        String baseline = System.getProperty(PROP_BASELINE);
+        if (baseline == null)
+            return;
+        Properties props = new Properties();
+        InputStream in = new FileInputStream(baseline);
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+        for (Result r : results) {
+            String expected = props.getProperty(r.transport + '.' + r.bodySize + ".msgsPerSec");
+            if (expected == null)
+                continue;
+            double min = Double.parseDouble(expected) * (1 - MAX_REGRESSION);
+            assertTrue(String.format(Locale.US, "%s %d byte throughput regressed: %.1f < %.1f msgs/sec",
+                    r.transport, r.bodySize, r.msgsPerSec, min), r.msgsPerSec >= min);
+        }
+    }
+}